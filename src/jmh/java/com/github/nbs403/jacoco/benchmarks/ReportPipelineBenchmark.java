@@ -0,0 +1,162 @@
+package com.github.nbs403.jacoco.benchmarks;
+
+import com.github.nbs403.jacoco.analysis.StructureCache;
+import com.github.nbs403.jacoco.annotations.ReportFormat;
+import com.github.nbs403.jacoco.data.ExecutionDataMerger;
+import com.github.nbs403.jacoco.extensions.JacocoReportExtension;
+import com.github.nbs403.jacoco.extensions.SyntheticClasses;
+import com.github.nbs403.jacoco.utils.Constants;
+import org.apache.commons.io.FileUtils;
+import org.jacoco.core.analysis.IBundleCoverage;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.SessionInfo;
+import org.jacoco.core.data.SessionInfoStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.EnumSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the dump to report pipeline of {@link JacocoReportExtension} over generated class directories.
+ * Run with the gc profiler, see the jmh Gradle task, to get allocation rates along throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+public class ReportPipelineBenchmark {
+
+    private static final int METHODS_PER_CLASS = 10;
+    private static final double PROBE_DENSITY = 0.3;
+    //Distinct stores analyzed in turn, so no class hits the analysis of the previous probes
+    private static final int ANALYZED_STORES = 8;
+
+    @Param({"1000", "10000", "50000"})
+    public int classCount;
+
+    private File workDir;
+    private File classesDir;
+    private File reportDir;
+    private File execFile;
+    private JacocoReportExtension extension;
+    private ExecutionDataStore first;
+    private ExecutionDataStore second;
+    private ExecutionDataStore[] analyzedStores;
+    private int nextAnalyzedStore;
+    private SessionInfoStore sessionInfoStore;
+    private IBundleCoverage bundleCoverage;
+
+    @Setup
+    public void setup() throws IOException {
+        workDir = Files.createTempDirectory("jacocobenchmark").toFile();
+        classesDir = new File(workDir, "classes");
+        reportDir = new File(workDir, "report");
+        execFile = new File(workDir, "bench.exec");
+        final SyntheticClasses synthetic = SyntheticClasses.generate(classesDir, classCount, METHODS_PER_CLASS);
+        System.setProperty(Constants.JACOCO_HOST, "");
+        System.setProperty(Constants.JACOCO_CLASSES_DIR, classesDir.getAbsolutePath());
+        System.setProperty(Constants.JACOCO_SOURCES_DIR, workDir.getAbsolutePath());
+        extension = new JacocoReportExtension();
+        final Random random = new Random(classCount);
+        first = synthetic.executionData(PROBE_DENSITY, random);
+        second = synthetic.executionData(PROBE_DENSITY, random);
+        analyzedStores = new ExecutionDataStore[ANALYZED_STORES];
+        for (int i = 0; i < ANALYZED_STORES; i++) {
+            analyzedStores[i] = synthetic.executionData(PROBE_DENSITY, random);
+        }
+        sessionInfoStore = new SessionInfoStore();
+        sessionInfoStore.visitSessionInfo(new SessionInfo("benchmark", 1L, 2L));
+        extension.save(execFile, sessionInfoStore, first);
+        //Also fills the structure cache, as after the first test of a run
+        bundleCoverage = extension.analyzeStructure(first, "benchmark");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(workDir);
+    }
+
+    /**
+     * Analysis of the next test: class structures are cached, the probes differ from the previous analysis
+     */
+    @Benchmark
+    public IBundleCoverage analyzeStructure() throws IOException {
+        final ExecutionDataStore store = analyzedStores[nextAnalyzedStore];
+        nextAnalyzedStore = (nextAnalyzedStore + 1) % ANALYZED_STORES;
+        return extension.analyzeStructure(store, "benchmark");
+    }
+
+    /**
+     * Analysis of the first test of a run: every class file is read and parsed
+     */
+    @Benchmark
+    public IBundleCoverage analyzeStructureCold(final ColdStructureCache cold) throws IOException {
+        return extension.analyzeStructure(second, "benchmark");
+    }
+
+    @Benchmark
+    public ExecutionDataStore mergeExecutionData() {
+        //Held across the merges into the target, as by a scenario accumulating its tests
+        final ExecutionDataMerger merger = new ExecutionDataMerger(new ExecutionDataStore());
+        merger.merge(first);
+        return merger.merge(second);
+    }
+
+    @Benchmark
+    public SessionInfoStore mergeSessionInfo() {
+        return extension.merge(new SessionInfoStore(), sessionInfoStore);
+    }
+
+    @Benchmark
+    public File save() throws IOException {
+        extension.save(execFile, sessionInfoStore, second);
+        return execFile;
+    }
+
+    @Benchmark
+    public ExecutionDataStore load() throws IOException {
+        return extension.load(execFile);
+    }
+
+    @Benchmark
+    public File createHtmlReport() throws IOException {
+        extension.createReport(bundleCoverage, sessionInfoStore, first, reportDir, EnumSet.of(ReportFormat.HTML));
+        return reportDir;
+    }
+
+    @Benchmark
+    public File createJsonReport() throws IOException {
+        extension.createReport(bundleCoverage, sessionInfoStore, first, reportDir, EnumSet.of(ReportFormat.JSON));
+        return reportDir;
+    }
+
+    /**
+     * Empties the structure cache before every invocation of the benchmarks using it
+     */
+    @State(Scope.Benchmark)
+    public static class ColdStructureCache {
+
+        @Setup(Level.Invocation)
+        public void clear(final ReportPipelineBenchmark benchmark) {
+            StructureCache.forRoot(benchmark.classesDir).clear();
+        }
+    }
+}
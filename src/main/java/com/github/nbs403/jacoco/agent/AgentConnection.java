@@ -0,0 +1,307 @@
+package com.github.nbs403.jacoco.agent;
+
+import com.github.nbs403.jacoco.utils.Constants;
+import com.github.nbs403.jacoco.utils.Settings;
+import org.apache.log4j.Logger;
+import org.jacoco.core.data.IExecutionDataVisitor;
+import org.jacoco.core.data.ISessionInfoVisitor;
+import org.jacoco.core.runtime.RemoteControlReader;
+import org.jacoco.core.runtime.RemoteControlWriter;
+import org.jacoco.core.tools.ExecFileLoader;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long lived connection to a Jacoco agent running in tcpserver mode.
+ * The socket is opened on first use and kept open across tests, every dump and reset command is sent on the same
+ * stream. Each command waits for the agent acknowledgement, so a reset is complete before the test starts.
+ * A failed command drops the socket and is retried on a new one after an exponential backoff with full jitter.
+ * Every command has a deadline, the socket read timeout is set before each read to the time left until the deadline.
+ * A command not answered in time drops the socket and fails, releasing the connection for the next command, which
+ * reconnects.
+ */
+public final class AgentConnection implements Closeable {
+
+    private static final Logger LOG = Logger.getLogger(String.valueOf(AgentConnection.class));
+    private static final Map<String, AgentConnection> CONNECTIONS = new ConcurrentHashMap<>();
+    private static final int DEFAULT_RETRY_COUNT = 3;
+    private static final long BASE_RETRY_DELAY = 100L;
+    private static final long MAX_RETRY_DELAY = 3000L;
+    static final int DEFAULT_TIMEOUT = 60000;
+    private static final ISessionInfoVisitor IGNORE_SESSION_INFO = info -> { };
+    private static final IExecutionDataVisitor IGNORE_EXECUTION_DATA = data -> { };
+
+    private final String host;
+    private final int port;
+    private final int retryCount;
+    private final int timeout;
+    private Socket socket;
+    private RemoteControlWriter writer;
+    private RemoteControlReader reader;
+    private long deadline;
+    private boolean bounded;
+
+    /**
+     * @param host       - agent host
+     * @param port       - agent port
+     * @param retryCount - number of retries of a failed command
+     */
+    public AgentConnection(final String host, final int port, final int retryCount) {
+        this(host, port, retryCount, 0);
+    }
+
+    /**
+     * @param host       - agent host
+     * @param port       - agent port
+     * @param retryCount - number of retries of a failed command
+     * @param timeout    - time in milliseconds a command has to be answered, retries included, 0 for none. A timed out
+     *                   command is not retried
+     */
+    public AgentConnection(final String host, final int port, final int retryCount, final int timeout) {
+        this.host = host;
+        this.port = port;
+        this.retryCount = retryCount;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Returns the connection shared by all extensions in this JVM for the agent, with the JACOCO_AGENT_TIMEOUT
+     * timeout
+     *
+     * @param agent - agent host and port
+     * @return shared connection, not connected until first used
+     */
+    public static AgentConnection get(final AgentEndpoint agent) {
+        return CONNECTIONS.computeIfAbsent(agent.toString(), key -> new AgentConnection(
+                agent.getHost(), agent.getPort(), DEFAULT_RETRY_COUNT,
+                Settings.getInt(Constants.JACOCO_AGENT_TIMEOUT, DEFAULT_TIMEOUT)));
+    }
+
+    /**
+     * Closes all shared connections
+     */
+    public static void closeAll() {
+        for (final AgentConnection connection : CONNECTIONS.values()) {
+            connection.close();
+        }
+        CONNECTIONS.clear();
+    }
+
+    /**
+     * Dumps the agent execution data
+     *
+     * @param reset - true to reset the agent execution data after the dump
+     * @return loader holding the dumped execution data and session info
+     * @throws IOException if the agent cannot be reached after all retries
+     */
+    public ExecFileLoader dump(final boolean reset) throws IOException {
+        final ExecFileLoader loader = new ExecFileLoader();
+        execute(true, reset, loader.getSessionInfoStore(), loader.getExecutionDataStore());
+        return loader;
+    }
+
+    /**
+     * Dumps the agent execution data before the given deadline
+     *
+     * @param reset    - true to reset the agent execution data after the dump
+     * @param deadline - {@link System#nanoTime()} the agent must have answered by
+     * @return loader holding the dumped execution data and session info
+     * @throws IOException if the agent cannot be reached after all retries or does not answer in time
+     */
+    public ExecFileLoader dump(final boolean reset, final long deadline) throws IOException {
+        final ExecFileLoader loader = new ExecFileLoader();
+        execute(true, reset, loader.getSessionInfoStore(), loader.getExecutionDataStore(), deadline);
+        return loader;
+    }
+
+    /**
+     * Resets the agent execution data without transferring it
+     *
+     * @throws IOException if the agent cannot be reached after all retries
+     */
+    public void reset() throws IOException {
+        execute(false, true, IGNORE_SESSION_INFO, IGNORE_EXECUTION_DATA);
+    }
+
+    /**
+     * Resets the agent execution data before the given deadline
+     *
+     * @param deadline - {@link System#nanoTime()} the agent must have answered by
+     * @throws IOException if the agent cannot be reached after all retries or does not answer in time
+     */
+    public void reset(final long deadline) throws IOException {
+        execute(false, true, IGNORE_SESSION_INFO, IGNORE_EXECUTION_DATA, deadline);
+    }
+
+    /**
+     * Sends a dump command and streams the agent response to the given visitors.
+     * On a retry the visitors may see data of the failed attempt again.
+     *
+     * @param dump                  - true to dump execution data
+     * @param reset                 - true to reset execution data
+     * @param sessionInfoVisitor    - receives session info of the dump
+     * @param executionDataVisitor  - receives execution data of the dump
+     * @throws IOException if the agent cannot be reached after all retries
+     */
+    public synchronized void execute(final boolean dump, final boolean reset,
+                                     final ISessionInfoVisitor sessionInfoVisitor,
+                                     final IExecutionDataVisitor executionDataVisitor) throws IOException {
+        bounded = timeout > 0;
+        deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        run(dump, reset, sessionInfoVisitor, executionDataVisitor);
+    }
+
+    /**
+     * Sends a dump command and streams the agent response to the given visitors, failing the command and dropping
+     * the socket if the agent has not answered by the deadline.
+     * On a retry the visitors may see data of the failed attempt again.
+     *
+     * @param dump                  - true to dump execution data
+     * @param reset                 - true to reset execution data
+     * @param sessionInfoVisitor    - receives session info of the dump
+     * @param executionDataVisitor  - receives execution data of the dump
+     * @param deadline              - {@link System#nanoTime()} the agent must have answered by
+     * @throws IOException if the agent cannot be reached after all retries or does not answer in time
+     */
+    public synchronized void execute(final boolean dump, final boolean reset,
+                                     final ISessionInfoVisitor sessionInfoVisitor,
+                                     final IExecutionDataVisitor executionDataVisitor, final long deadline)
+            throws IOException {
+        bounded = true;
+        this.deadline = deadline;
+        run(dump, reset, sessionInfoVisitor, executionDataVisitor);
+    }
+
+    private void run(final boolean dump, final boolean reset, final ISessionInfoVisitor sessionInfoVisitor,
+                     final IExecutionDataVisitor executionDataVisitor) throws IOException {
+        IOException failure = null;
+        for (int attempt = 0; attempt <= retryCount; attempt++) {
+            if (attempt > 0) {
+                backoff(attempt);
+            }
+            try {
+                connect();
+                reader.setSessionInfoVisitor(sessionInfoVisitor);
+                reader.setExecutionDataVisitor(executionDataVisitor);
+                writer.visitDumpCommand(dump, reset);
+                if (!reader.read()) {
+                    throw new IOException("Socket closed unexpectedly.");
+                }
+                return;
+            } catch (final SocketTimeoutException e) {
+                disconnect();
+                throw e;
+            } catch (final IOException e) {
+                failure = e;
+                LOG.warn(String.format("Jacoco agent %s:%d command failed, attempt %d of %d: %s", host, port,
+                                       attempt + 1, retryCount + 1, e.getMessage()));
+                disconnect();
+            }
+        }
+        throw failure;
+    }
+
+    /**
+     * Closes the socket, the next command opens a new one
+     */
+    @Override
+    public synchronized void close() {
+        disconnect();
+    }
+
+    private void connect() throws IOException {
+        if (socket != null) {
+            return;
+        }
+        final Socket newSocket = new Socket();
+        try {
+            newSocket.setTcpNoDelay(true);
+            newSocket.connect(new InetSocketAddress(host, port), remainingMillis());
+            writer = new RemoteControlWriter(newSocket.getOutputStream());
+            reader = new RemoteControlReader(new BufferedInputStream(new DeadlineInputStream(newSocket)));
+        } catch (final IOException e) {
+            newSocket.close();
+            throw e;
+        }
+        socket = newSocket;
+        LOG.debug(String.format("Connected to Jacoco agent %s:%d", host, port));
+    }
+
+    private void disconnect() {
+        if (socket == null) {
+            return;
+        }
+        try {
+            socket.close();
+        } catch (final IOException e) {
+            LOG.debug(String.format("Failed to close connection to Jacoco agent %s:%d", host, port), e);
+        }
+        socket = null;
+        writer = null;
+        reader = null;
+    }
+
+    /**
+     * @return milliseconds left until the deadline of the running command, 0 if it has none
+     * @throws SocketTimeoutException if the deadline has passed
+     */
+    private int remainingMillis() throws SocketTimeoutException {
+        if (!bounded) {
+            return 0;
+        }
+        final long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        if (remaining <= 0) {
+            throw new SocketTimeoutException(String.format("Jacoco agent %s:%d did not answer in time", host, port));
+        }
+        return (int) Math.min(Integer.MAX_VALUE, remaining);
+    }
+
+    private void backoff(final int attempt) throws IOException {
+        final long ceiling = Math.min(MAX_RETRY_DELAY, BASE_RETRY_DELAY << Math.min(attempt - 1, 16));
+        long delay = ThreadLocalRandom.current().nextLong(ceiling + 1);
+        if (bounded) {
+            //Sleep no longer than the deadline, the next attempt then times out without holding the connection
+            delay = Math.min(delay, Math.max(0L, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+        }
+        try {
+            Thread.sleep(delay);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reconnecting to Jacoco agent", e);
+        }
+    }
+
+    /**
+     * Socket input stream bounding every read by the deadline of the running command
+     */
+    private final class DeadlineInputStream extends FilterInputStream {
+        private final Socket target;
+
+        private DeadlineInputStream(final Socket target) throws IOException {
+            super(target.getInputStream());
+            this.target = target;
+        }
+
+        @Override
+        public int read() throws IOException {
+            target.setSoTimeout(remainingMillis());
+            return super.read();
+        }
+
+        @Override
+        public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+            target.setSoTimeout(remainingMillis());
+            return super.read(bytes, offset, length);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.github.nbs403.jacoco.agent;
+
+import java.util.Objects;
+
+/**
+ * Host and port of a Jacoco agent running in tcpserver mode
+ */
+public final class AgentEndpoint implements Comparable<AgentEndpoint> {
+
+    private final String host;
+    private final int port;
+
+    public AgentEndpoint(final String host, final int port) {
+        this.host = Objects.requireNonNull(host, "Jacoco agent host cannot be null");
+        this.port = port;
+    }
+
+    /**
+     * Parses host:port, or a bare host using the default port
+     *
+     * @param endpoint    - agent address
+     * @param defaultPort - port used when endpoint has none
+     * @return parsed endpoint
+     */
+    public static AgentEndpoint parse(final String endpoint, final int defaultPort) {
+        final String trimmed = endpoint.trim();
+        final int separator = trimmed.lastIndexOf(':');
+        if (separator < 0 || trimmed.indexOf(':') != separator) {
+            //No port, or an IPv6 address without brackets
+            return new AgentEndpoint(trimmed, defaultPort);
+        }
+        return new AgentEndpoint(trimmed.substring(0, separator),
+                                 Integer.parseInt(trimmed.substring(separator + 1)));
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    @Override
+    public int compareTo(final AgentEndpoint other) {
+        final int byHost = host.compareTo(other.host);
+        return byHost != 0 ? byHost : Integer.compare(port, other.port);
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof AgentEndpoint)) {
+            return false;
+        }
+        final AgentEndpoint endpoint = (AgentEndpoint) other;
+        return port == endpoint.port && host.equals(endpoint.host);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(host, port);
+    }
+
+    @Override
+    public String toString() {
+        return host + ":" + port;
+    }
+}
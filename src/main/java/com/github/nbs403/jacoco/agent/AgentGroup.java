@@ -0,0 +1,157 @@
+package com.github.nbs403.jacoco.agent;
+
+import com.github.nbs403.jacoco.data.ExecutionDataMerger;
+import com.github.nbs403.jacoco.utils.Constants;
+import com.github.nbs403.jacoco.utils.Settings;
+import org.apache.log4j.Logger;
+import org.jacoco.core.data.IExecutionDataVisitor;
+import org.jacoco.core.data.ISessionInfoVisitor;
+import org.jacoco.core.tools.ExecFileLoader;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fans dump and reset commands out to several agents concurrently, e.g. all instrumented JVMs of the system under
+ * test, and merges their execution data into one store.
+ * Every agent has JACOCO_AGENT_TIMEOUT to answer. An agent that fails or times out is logged and left out, so one
+ * slow node cannot stall a test. The command only fails when no agent answered. The timeout is the deadline of the
+ * command on every agent connection, so the command of an agent that timed out ends with it and the connection
+ * reconnects for the next command.
+ */
+public final class AgentGroup {
+
+    private static final Logger LOG = Logger.getLogger(String.valueOf(AgentGroup.class));
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        final Thread thread = new Thread(runnable, "jacoco-agent-" + THREAD_COUNT.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private AgentGroup() {
+    }
+
+    /**
+     * Dumps all agents and merges their execution data and session infos
+     *
+     * @param agents - agents to dump
+     * @param reset  - true to reset the agents execution data after the dump
+     * @return loader holding the merged execution data and session infos
+     * @throws IOException if no agent could be dumped
+     */
+    public static ExecFileLoader dump(final List<AgentEndpoint> agents, final boolean reset) throws IOException {
+        final Collection<ExecFileLoader> dumps = dumpEach(agents, reset).values();
+        if (dumps.size() == 1) {
+            return dumps.iterator().next();
+        }
+        final ExecFileLoader merged = new ExecFileLoader();
+        final ExecutionDataMerger merger = new ExecutionDataMerger(merged.getExecutionDataStore());
+        for (final ExecFileLoader dump : dumps) {
+            merger.merge(dump.getExecutionDataStore());
+            dump.getSessionInfoStore().accept(merged.getSessionInfoStore());
+        }
+        return merged;
+    }
+
+    /**
+     * Dumps all agents, keeping the dump of every agent apart
+     *
+     * @param agents - agents to dump
+     * @param reset  - true to reset the agents execution data after the dump
+     * @return dump of every agent that answered, in agents order
+     * @throws IOException if no agent could be dumped
+     */
+    public static Map<AgentEndpoint, ExecFileLoader> dumpEach(final List<AgentEndpoint> agents, final boolean reset)
+            throws IOException {
+        return execute(agents, (connection, deadline) -> connection.dump(reset, deadline));
+    }
+
+    /**
+     * Dumps all agents, streaming their execution data and session infos to the visitors as it is read.
+     * With several agents the visitors are called concurrently and must be thread safe. An agent that timed out may
+     * still call them after this returns
+     *
+     * @param agents               - agents to dump
+     * @param reset                - true to reset the agents execution data after the dump
+     * @param sessionInfoVisitor   - receives the session infos of all agents
+     * @param executionDataVisitor - receives the execution data of all agents, a class may be visited once per agent
+     * @throws IOException if no agent could be dumped
+     */
+    public static void dump(final List<AgentEndpoint> agents, final boolean reset,
+                            final ISessionInfoVisitor sessionInfoVisitor,
+                            final IExecutionDataVisitor executionDataVisitor) throws IOException {
+        execute(agents, (connection, deadline) -> {
+            connection.execute(true, reset, sessionInfoVisitor, executionDataVisitor, deadline);
+            return Boolean.TRUE;
+        });
+    }
+
+    /**
+     * Resets the execution data of all agents
+     *
+     * @param agents - agents to reset
+     * @throws IOException if no agent could be reset
+     */
+    public static void reset(final List<AgentEndpoint> agents) throws IOException {
+        execute(agents, (connection, deadline) -> {
+            connection.reset(deadline);
+            return Boolean.TRUE;
+        });
+    }
+
+    private static <T> Map<AgentEndpoint, T> execute(final List<AgentEndpoint> agents,
+                                                     final AgentCommand<T> command) throws IOException {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(
+                Settings.getInt(Constants.JACOCO_AGENT_TIMEOUT, AgentConnection.DEFAULT_TIMEOUT));
+        if (agents.size() == 1) {
+            //Nothing to overlap, stay on the test thread
+            return Collections.singletonMap(agents.get(0),
+                                            command.execute(AgentConnection.get(agents.get(0)), deadline));
+        }
+        final List<Future<T>> futures = new ArrayList<>();
+        for (final AgentEndpoint agent : agents) {
+            futures.add(EXECUTOR.submit(() -> command.execute(AgentConnection.get(agent), deadline)));
+        }
+        final Map<AgentEndpoint, T> results = new LinkedHashMap<>();
+        IOException failure = null;
+        for (int i = 0; i < agents.size(); i++) {
+            try {
+                results.put(agents.get(i), futures.get(i).get(Math.max(0L, deadline - System.nanoTime()),
+                                                              TimeUnit.NANOSECONDS));
+            } catch (final TimeoutException e) {
+                //Interrupts a retry backoff, a blocked read fails on its own at the deadline and drops the socket
+                futures.get(i).cancel(true);
+                failure = new IOException("Timed out waiting for Jacoco agent " + agents.get(i), e);
+                LOG.warn(failure.getMessage());
+            } catch (final ExecutionException e) {
+                failure = new IOException("Jacoco agent " + agents.get(i) + " failed", e.getCause());
+                LOG.warn(failure.getMessage(), e.getCause());
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted waiting for Jacoco agents", e);
+            }
+        }
+        if (results.isEmpty()) {
+            throw failure;
+        }
+        return results;
+    }
+
+    @FunctionalInterface
+    private interface AgentCommand<T> {
+        T execute(AgentConnection connection, long deadline) throws IOException;
+    }
+}
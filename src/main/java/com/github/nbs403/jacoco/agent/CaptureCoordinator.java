@@ -0,0 +1,103 @@
+package com.github.nbs403.jacoco.agent;
+
+import org.junit.jupiter.api.extension.ExtensionContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Serializes coverage capture windows - from the reset before a test to the dump after it - per Jacoco agent.
+ * An agent only has one set of counters, so two tests capturing from it at the same time would see each other's
+ * coverage. Tests capturing from different agents, and tests without coverage, still run concurrently.
+ * Waiting for an agent goes through {@link ForkJoinPool#managedBlock}, so JUnit's parallel executor can compensate
+ * for the blocked worker.
+ */
+public final class CaptureCoordinator {
+
+    private static final CaptureCoordinator SHARED = new CaptureCoordinator();
+
+    private final Map<AgentEndpoint, Semaphore> windows = new ConcurrentHashMap<>();
+
+    /**
+     * @return the coordinator shared by all extensions in this JVM
+     */
+    public static CaptureCoordinator shared() {
+        return SHARED;
+    }
+
+    /**
+     * Opens a capture window, waiting until no other test captures from any of the agents.
+     * Agents are locked in a fixed order so tests sharing some of their agents cannot deadlock.
+     *
+     * @param agents - agents the test captures coverage from
+     * @return capture window to close once the agents are dumped
+     * @throws IOException if interrupted while waiting
+     */
+    public CaptureWindow open(final Collection<AgentEndpoint> agents) throws IOException {
+        final List<Semaphore> acquired = new ArrayList<>();
+        try {
+            for (final AgentEndpoint agent : new TreeSet<>(agents)) {
+                final Semaphore window = windows.computeIfAbsent(agent, key -> new Semaphore(1));
+                acquire(window);
+                acquired.add(window);
+            }
+        } catch (final InterruptedException e) {
+            acquired.forEach(Semaphore::release);
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for Jacoco agents " + agents, e);
+        }
+        return new CaptureWindow(acquired);
+    }
+
+    private static void acquire(final Semaphore window) throws InterruptedException {
+        ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+            private boolean acquired;
+
+            @Override
+            public boolean block() throws InterruptedException {
+                if (!acquired) {
+                    window.acquire();
+                    acquired = true;
+                }
+                return true;
+            }
+
+            @Override
+            public boolean isReleasable() {
+                if (!acquired) {
+                    acquired = window.tryAcquire();
+                }
+                return acquired;
+            }
+        });
+    }
+
+    /**
+     * Exclusive capture of a set of agents. It is closeable from any thread, and stored in the test's extension
+     * context store so JUnit closes it if the test ends without the dump releasing it
+     */
+    public static final class CaptureWindow implements ExtensionContext.Store.CloseableResource {
+
+        private final List<Semaphore> windows;
+        private boolean closed;
+
+        private CaptureWindow(final List<Semaphore> windows) {
+            this.windows = windows;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                windows.forEach(Semaphore::release);
+            }
+        }
+    }
+}
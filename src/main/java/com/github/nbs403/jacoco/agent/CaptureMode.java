@@ -0,0 +1,31 @@
+package com.github.nbs403.jacoco.agent;
+
+import java.util.Locale;
+
+/**
+ * How the coverage of a single test is captured from the agents, see JACOCO_CAPTURE_MODE
+ */
+public enum CaptureMode {
+    /**
+     * Reset the agents before the test, dump and reset them after it
+     */
+    RESET,
+    /**
+     * Never reset the agents, the test's coverage is the difference of snapshots taken before and after it, see
+     * {@link DifferentialCapture}
+     */
+    DIFFERENTIAL;
+
+    /**
+     * @param value       - mode name, case insensitive
+     * @param defaultMode - mode used when the value is blank
+     * @return capture mode of the value
+     * @throws IllegalArgumentException if the value is not a capture mode
+     */
+    public static CaptureMode parse(final String value, final CaptureMode defaultMode) {
+        if (value == null || value.trim().isEmpty()) {
+            return defaultMode;
+        }
+        return valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+}
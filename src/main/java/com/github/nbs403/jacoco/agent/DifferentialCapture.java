@@ -0,0 +1,135 @@
+package com.github.nbs403.jacoco.agent;
+
+import com.github.nbs403.jacoco.data.ExecutionDataMerger;
+import com.github.nbs403.jacoco.data.Snapshots;
+import org.apache.log4j.Logger;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.SessionInfo;
+import org.jacoco.core.data.SessionInfoStore;
+import org.jacoco.core.tools.ExecFileLoader;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Captures the coverage of a test without ever resetting the agents, so other consumers of the same agents keep their
+ * coverage. Agents are dumped without reset before and after the test, and the test's coverage is the probes newly
+ * set between both snapshots.
+ * The snapshot after a test is cached per agent and serves as the snapshot before the next test, so a test usually
+ * costs a single dump. A snapshot is dropped when its agent fails to answer, and taken again before the next test.
+ * When the agent's session changed between both snapshots - it was restarted or reset by someone else - the whole
+ * later snapshot is the test's coverage.
+ * Tests capturing from the same agent must not overlap, see {@link CaptureCoordinator}: the delta holds everything
+ * executed on the agent between both snapshots.
+ */
+public final class DifferentialCapture {
+
+    private static final Logger LOG = Logger.getLogger(String.valueOf(DifferentialCapture.class));
+    private static final DifferentialCapture SHARED = new DifferentialCapture();
+
+    private final Map<AgentEndpoint, Snapshot> snapshots = new ConcurrentHashMap<>();
+
+    /**
+     * @return the snapshots shared by all extensions in this JVM
+     */
+    public static DifferentialCapture shared() {
+        return SHARED;
+    }
+
+    /**
+     * Takes a snapshot of the agents that have none cached, without resetting them
+     *
+     * @param agents - agents the test captures coverage from
+     * @throws IOException if no agent without snapshot could be dumped
+     */
+    public void before(final List<AgentEndpoint> agents) throws IOException {
+        final List<AgentEndpoint> missing = new ArrayList<>();
+        for (final AgentEndpoint agent : agents) {
+            if (!snapshots.containsKey(agent)) {
+                missing.add(agent);
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        for (final Map.Entry<AgentEndpoint, ExecFileLoader> dump : AgentGroup.dumpEach(missing, false).entrySet()) {
+            snapshots.put(dump.getKey(), new Snapshot(dump.getValue()));
+        }
+    }
+
+    /**
+     * Takes a snapshot of the agents, without resetting them, and returns the probes newly set since the previous
+     * snapshot of every agent. The new snapshots replace the cached ones
+     *
+     * @param agents - agents the test captures coverage from
+     * @return loader holding the merged coverage of the test and the session infos of the agents
+     * @throws IOException if no agent could be dumped
+     */
+    public ExecFileLoader after(final List<AgentEndpoint> agents) throws IOException {
+        final Map<AgentEndpoint, ExecFileLoader> dumps = AgentGroup.dumpEach(agents, false);
+        final ExecFileLoader delta = new ExecFileLoader();
+        final ExecutionDataMerger merger = new ExecutionDataMerger(delta.getExecutionDataStore());
+        for (final AgentEndpoint agent : agents) {
+            final ExecFileLoader dump = dumps.get(agent);
+            if (dump == null) {
+                //Failed or timed out, its coverage since the snapshot is unknown
+                snapshots.remove(agent);
+                continue;
+            }
+            final Snapshot after = new Snapshot(dump);
+            final Snapshot before = snapshots.put(agent, after);
+            if (before == null) {
+                LOG.warn(String.format("No snapshot of Jacoco agent %s before the test, its coverage is left out",
+                                       agent));
+                continue;
+            }
+            if (before.isSameSession(after)) {
+                merger.merge(Snapshots.newlySet(before.executionData, after.executionData));
+            } else {
+                LOG.debug(String.format("Jacoco agent %s was restarted or reset since the last snapshot", agent));
+                merger.merge(after.executionData);
+            }
+            dump.getSessionInfoStore().accept(delta.getSessionInfoStore());
+        }
+        return delta;
+    }
+
+    /**
+     * Drops all cached snapshots, the next test of every agent takes a snapshot before it runs
+     */
+    public void clear() {
+        snapshots.clear();
+    }
+
+    /**
+     * Execution data of an agent at a point in time, with the session it belongs to
+     */
+    private static final class Snapshot {
+        private final ExecutionDataStore executionData;
+        private final SessionInfo session;
+
+        private Snapshot(final ExecFileLoader dump) {
+            this.executionData = dump.getExecutionDataStore();
+            this.session = latest(dump.getSessionInfoStore());
+        }
+
+        private static SessionInfo latest(final SessionInfoStore sessionInfoStore) {
+            final List<SessionInfo> infos = sessionInfoStore.getInfos();
+            return infos.isEmpty() ? null : infos.get(infos.size() - 1);
+        }
+
+        /**
+         * An agent keeps its session id and start time until it is restarted or reset
+         */
+        private boolean isSameSession(final Snapshot later) {
+            if (session == null || later.session == null) {
+                return true;
+            }
+            return session.getId().equals(later.session.getId())
+                    && session.getStartTimeStamp() == later.session.getStartTimeStamp();
+        }
+    }
+}
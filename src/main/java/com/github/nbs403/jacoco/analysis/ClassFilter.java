@@ -0,0 +1,82 @@
+package com.github.nbs403.jacoco.analysis;
+
+import org.jacoco.core.runtime.WildcardMatcher;
+import org.junit.platform.commons.util.StringUtils;
+
+import java.util.Objects;
+
+/**
+ * Include and exclude patterns selecting the classes to analyze, with the syntax of the Jacoco agent includes and
+ * excludes: qualified class names with * and ? wildcards, e.g. "com.acme.*", separated by : or ,
+ * A class is analyzed if it matches an include pattern - every class when there are none - and no exclude pattern.
+ * Filters of the same patterns are equal.
+ */
+public final class ClassFilter {
+
+    /**
+     * Selects every class
+     */
+    public static final ClassFilter ALL = new ClassFilter(null, null);
+
+    private final String includePatterns;
+    private final String excludePatterns;
+    private final WildcardMatcher includes;
+    private final WildcardMatcher excludes;
+
+    private ClassFilter(final String includePatterns, final String excludePatterns) {
+        this.includePatterns = includePatterns;
+        this.excludePatterns = excludePatterns;
+        includes = includePatterns == null ? null : new WildcardMatcher(includePatterns);
+        excludes = excludePatterns == null ? null : new WildcardMatcher(excludePatterns);
+    }
+
+    /**
+     * @param includes - include patterns, null or blank to include every class
+     * @param excludes - exclude patterns, null or blank to exclude none
+     * @return filter of the patterns
+     */
+    public static ClassFilter of(final String includes, final String excludes) {
+        final String includePatterns = normalize(includes);
+        final String excludePatterns = normalize(excludes);
+        return includePatterns == null && excludePatterns == null ? ALL
+                                                                   : new ClassFilter(includePatterns, excludePatterns);
+    }
+
+    /**
+     * @param className - VM name of the class, e.g. com/acme/Foo$Bar
+     * @return true if the class is to be analyzed
+     */
+    public boolean matches(final String className) {
+        if (this == ALL) {
+            return true;
+        }
+        final String qualifiedName = className.replace('/', '.');
+        return (includes == null || includes.matches(qualifiedName))
+                && (excludes == null || !excludes.matches(qualifiedName));
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof ClassFilter)) {
+            return false;
+        }
+        final ClassFilter filter = (ClassFilter) other;
+        return Objects.equals(includePatterns, filter.includePatterns)
+                && Objects.equals(excludePatterns, filter.excludePatterns);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(includePatterns, excludePatterns);
+    }
+
+    private static String normalize(final String patterns) {
+        if (StringUtils.isBlank(patterns)) {
+            return null;
+        }
+        return patterns.replace(',', ':').replaceAll("\\s+", "");
+    }
+}
@@ -0,0 +1,402 @@
+package com.github.nbs403.jacoco.analysis;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Class files of a classes directory or of a jar, war, ear or zip archive, as listed by {@link #list()}.
+ * Archives are indexed once: their entries are listed from the central directory and read on demand, archives nested
+ * in them - e.g. WEB-INF/lib jars of a war - are extracted once to a temporary directory and indexed the same way.
+ * The index is rebuilt when the archive modification time or size changes. Archives found in a classes directory are
+ * listed along its class files.
+ * Classes are named after their path, so they can be filtered before being read. The package of the class files of a
+ * directory is read from one of them, the root may be above the package root - e.g. the project directory - and the
+ * path of the class files is not trusted as their package.
+ */
+public final class ClassRoot {
+
+    private static final String CLASS_FILE_EXTENSION = ".class";
+    private static final String[] ARCHIVE_EXTENSIONS = {".jar", ".war", ".ear", ".zip"};
+    private static final String[] CLASSES_PREFIXES = {"WEB-INF/classes/", "BOOT-INF/classes/"};
+    private static final Logger LOG = Logger.getLogger(String.valueOf(ClassRoot.class));
+    private static final Map<File, ClassRoot> ROOTS = new ConcurrentHashMap<>();
+
+    private final File file;
+    private final Map<Path, DirectoryPackage> packages = new ConcurrentHashMap<>();
+    private ArchiveIndex archive;
+
+    private ClassRoot(final File file) {
+        this.file = file;
+    }
+
+    /**
+     * Returns the shared root of the given directory or archive, creating it on first use
+     *
+     * @param file - classes directory or archive
+     * @return the root shared by this JVM for that file
+     */
+    public static ClassRoot forFile(final File file) {
+        return ROOTS.computeIfAbsent(file.getAbsoluteFile(), ClassRoot::new);
+    }
+
+    /**
+     * Closes the indexed archives and deletes their extracted nested archives, they are indexed again on next use
+     */
+    public static void closeAll() {
+        for (final ClassRoot root : ROOTS.values()) {
+            root.close();
+        }
+    }
+
+    /**
+     * @param file - file name or path
+     * @return true if the file is an archive that can hold classes
+     */
+    private static boolean isArchive(final String file) {
+        final String lowerCase = file.toLowerCase(Locale.ROOT);
+        for (final String extension : ARCHIVE_EXTENSIONS) {
+            if (lowerCase.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Lists the class files of the root, without reading them
+     *
+     * @return class files of the root, empty if the root does not exist
+     * @throws IOException if the directory cannot be walked or the archive cannot be indexed
+     */
+    public List<ClassEntry> list() throws IOException {
+        if (!file.exists()) {
+            return Collections.emptyList();
+        }
+        if (file.isDirectory()) {
+            return listDirectory();
+        }
+        if (isArchive(file.getName())) {
+            return getArchive().entries;
+        }
+        if (!file.getName().endsWith(CLASS_FILE_EXTENSION)) {
+            return Collections.emptyList();
+        }
+        final String name = readClassName(Files.readAllBytes(file.toPath()), className("", file.getName()));
+        return Collections.singletonList(ClassEntry.ofFile(file.toPath(), name, file.lastModified(), file.length()));
+    }
+
+    /**
+     * @param packageName - VM name of the package, empty for the default package
+     * @param fileName    - name of the class file
+     * @return VM name of the class
+     */
+    private static String className(final String packageName, final String fileName) {
+        final String simpleName = fileName.substring(0, fileName.length() - CLASS_FILE_EXTENSION.length());
+        return packageName.isEmpty() ? simpleName : packageName + "/" + simpleName;
+    }
+
+    /**
+     * @param className - VM name of a class
+     * @return VM name of its package, empty for the default package
+     */
+    private static String packageName(final String className) {
+        final int separator = className.lastIndexOf('/');
+        return separator < 0 ? "" : className.substring(0, separator);
+    }
+
+    /**
+     * @param bytes    - content of a class file
+     * @param pathName - name of the class derived from the path of the class file
+     * @return VM name of the class, the path derived name if the class file cannot be parsed
+     */
+    private static String readClassName(final byte[] bytes, final String pathName) {
+        try {
+            return JacocoInternals.className(bytes);
+        } catch (final RuntimeException e) {
+            LOG.debug(String.format("Cannot read the name of class %s, named after its path", pathName), e);
+            return pathName;
+        }
+    }
+
+    private List<ClassEntry> listDirectory() throws IOException {
+        final List<ClassEntry> entries = new ArrayList<>();
+        final Path rootPath = file.toPath();
+        final List<Path> archives = new ArrayList<>();
+        Files.walkFileTree(rootPath, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(final Path path, final BasicFileAttributes attrs) throws IOException {
+                if (!attrs.isRegularFile()) {
+                    return FileVisitResult.CONTINUE;
+                }
+                final String fileName = path.getFileName().toString();
+                if (fileName.endsWith(CLASS_FILE_EXTENSION)) {
+                    final long version = attrs.lastModifiedTime().toMillis();
+                    final String packageName = getPackage(rootPath, path, version);
+                    entries.add(ClassEntry.ofFile(path, className(packageName, fileName), version, attrs.size()));
+                } else if (isArchive(fileName)) {
+                    archives.add(path);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        for (final Path path : archives) {
+            entries.addAll(forFile(path.toFile()).list());
+        }
+        return entries;
+    }
+
+    /**
+     * Returns the package of the class files of a directory, read from one of them. It is read again when that class
+     * file changes
+     *
+     * @param rootPath  - path of the root
+     * @param classFile - class file of the directory
+     * @param version   - modification time of the class file
+     * @return VM name of the package, empty for the default package
+     * @throws IOException if the class file cannot be read
+     */
+    private String getPackage(final Path rootPath, final Path classFile, final long version) throws IOException {
+        final Path directory = classFile.getParent();
+        final DirectoryPackage cached = packages.get(directory);
+        if (cached != null && (!cached.classFile.equals(classFile) || cached.version == version)) {
+            return cached.name;
+        }
+        final String pathPackage = rootPath.relativize(directory).toString().replace(File.separatorChar, '/');
+        final String name = packageName(readClassName(Files.readAllBytes(classFile),
+                                                      className(pathPackage, classFile.getFileName().toString())));
+        if (!name.equals(pathPackage)) {
+            LOG.debug(String.format("Classes of %s are in package %s", directory, name));
+        }
+        packages.put(directory, new DirectoryPackage(classFile, version, name));
+        return name;
+    }
+
+    private synchronized ArchiveIndex getArchive() throws IOException {
+        if (archive != null && archive.lastModified == file.lastModified() && archive.size == file.length()) {
+            return archive;
+        }
+        if (archive != null) {
+            LOG.debug(String.format("Archive %s changed, indexing it again", file));
+            archive.close();
+        }
+        archive = new ArchiveIndex(file);
+        return archive;
+    }
+
+    private synchronized void close() {
+        if (archive != null) {
+            archive.close();
+            archive = null;
+        }
+    }
+
+    /**
+     * A class file of a root, in a directory or an archive
+     */
+    public static final class ClassEntry {
+        private final String location;
+        private final String name;
+        private final long version;
+        private final long size;
+        private final Path path;
+        private final ZipFile zipFile;
+        private final ZipEntry zipEntry;
+
+        private ClassEntry(final String location, final String name, final long version, final long size,
+                           final Path path, final ZipFile zipFile, final ZipEntry zipEntry) {
+            this.location = location;
+            this.name = name;
+            this.version = version;
+            this.size = size;
+            this.path = path;
+            this.zipFile = zipFile;
+            this.zipEntry = zipEntry;
+        }
+
+        private static ClassEntry ofFile(final Path path, final String name, final long lastModified,
+                                         final long size) {
+            return new ClassEntry(path.toString(), name, lastModified, size, path, null, null);
+        }
+
+        private static ClassEntry ofArchive(final String archiveLocation, final ZipFile zipFile,
+                                            final ZipEntry zipEntry, final String name) {
+            return new ClassEntry(archiveLocation + "!/" + zipEntry.getName(), name, zipEntry.getCrc(),
+                                  zipEntry.getSize(), null, zipFile, zipEntry);
+        }
+
+        /**
+         * @return path of the class file, archive entries as archive!/entry
+         */
+        public String getLocation() {
+            return location;
+        }
+
+        /**
+         * @return VM name of the class, its package being the one of the class files of its directory
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return modification time of a file or CRC of an archive entry, changes with the class file
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * @return size of the class file
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * @return content of the class file
+         * @throws IOException if the class file cannot be read
+         */
+        public byte[] read() throws IOException {
+            if (path != null) {
+                return Files.readAllBytes(path);
+            }
+            try (InputStream inputStream = zipFile.getInputStream(zipEntry)) {
+                return IOUtils.toByteArray(inputStream);
+            }
+        }
+    }
+
+    /**
+     * Package of the class files of a directory, as read from one of them
+     */
+    private static final class DirectoryPackage {
+        private final Path classFile;
+        private final long version;
+        private final String name;
+
+        private DirectoryPackage(final Path classFile, final long version, final String name) {
+            this.classFile = classFile;
+            this.version = version;
+            this.name = name;
+        }
+    }
+
+    /**
+     * Entries of an archive and of the archives nested in it, with the open zip files they are read from
+     */
+    private static final class ArchiveIndex {
+        private final long lastModified;
+        private final long size;
+        private final List<ClassEntry> entries = new ArrayList<>();
+        private final List<ZipFile> zipFiles = new ArrayList<>();
+        private File extractDirectory;
+
+        private ArchiveIndex(final File archive) throws IOException {
+            lastModified = archive.lastModified();
+            size = archive.length();
+            try {
+                index(archive, archive.getPath());
+            } catch (final IOException e) {
+                close();
+                throw e;
+            }
+            LOG.debug(String.format("Indexed %d class files of %s", entries.size(), archive));
+        }
+
+        private void index(final File archive, final String location) throws IOException {
+            final ZipFile zipFile = new ZipFile(archive);
+            zipFiles.add(zipFile);
+            //Package of the class files of each directory of the archive
+            final Map<String, String> directoryPackages = new HashMap<>();
+            final Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+            while (zipEntries.hasMoreElements()) {
+                final ZipEntry zipEntry = zipEntries.nextElement();
+                if (zipEntry.isDirectory()) {
+                    continue;
+                }
+                if (zipEntry.getName().endsWith(CLASS_FILE_EXTENSION)) {
+                    final String entryName = zipEntry.getName();
+                    final int separator = entryName.lastIndexOf('/');
+                    final String fileName = entryName.substring(separator + 1);
+                    String packageName = directoryPackages.get(entryName.substring(0, separator + 1));
+                    if (packageName == null) {
+                        packageName = packageName(readClassName(read(zipFile, zipEntry),
+                                                                className(pathPackage(entryName), fileName)));
+                        directoryPackages.put(entryName.substring(0, separator + 1), packageName);
+                    }
+                    entries.add(ClassEntry.ofArchive(location, zipFile, zipEntry, className(packageName, fileName)));
+                } else if (isArchive(zipEntry.getName())) {
+                    index(extract(zipFile, zipEntry), location + "!/" + zipEntry.getName());
+                }
+            }
+        }
+
+        /**
+         * @param entryName - path of a class file in the archive
+         * @return VM name of its package as given by its path, without the classes directory of a war or boot jar
+         */
+        private static String pathPackage(final String entryName) {
+            String path = entryName;
+            for (final String prefix : CLASSES_PREFIXES) {
+                if (path.startsWith(prefix)) {
+                    path = path.substring(prefix.length());
+                    break;
+                }
+            }
+            return packageName(path);
+        }
+
+        private static byte[] read(final ZipFile zipFile, final ZipEntry zipEntry) throws IOException {
+            try (InputStream inputStream = zipFile.getInputStream(zipEntry)) {
+                return IOUtils.toByteArray(inputStream);
+            }
+        }
+
+        private File extract(final ZipFile zipFile, final ZipEntry zipEntry) throws IOException {
+            if (extractDirectory == null) {
+                extractDirectory = Files.createTempDirectory("jacocoarchive").toFile();
+                FileUtils.forceDeleteOnExit(extractDirectory);
+            }
+            final File extracted = File.createTempFile("nested", ".jar", extractDirectory);
+            try (InputStream inputStream = zipFile.getInputStream(zipEntry)) {
+                Files.copy(inputStream, extracted.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            return extracted;
+        }
+
+        private void close() {
+            for (final ZipFile zipFile : zipFiles) {
+                try {
+                    zipFile.close();
+                } catch (final IOException e) {
+                    LOG.debug("Failed to close " + zipFile.getName(), e);
+                }
+            }
+            zipFiles.clear();
+            if (extractDirectory != null) {
+                FileUtils.deleteQuietly(extractDirectory);
+            }
+        }
+    }
+}
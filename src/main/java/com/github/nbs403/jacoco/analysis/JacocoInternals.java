@@ -0,0 +1,106 @@
+package com.github.nbs403.jacoco.analysis;
+
+import org.jacoco.core.internal.data.CRC64;
+import org.jacoco.core.internal.flow.ClassProbesAdapter;
+import org.jacoco.core.internal.flow.ClassProbesVisitor;
+import org.jacoco.core.internal.flow.MethodProbesVisitor;
+import org.jacoco.core.internal.instr.InstrSupport;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The only user of Jacoco internal API, org.jacoco.core.internal, which may change in any Jacoco release.
+ * Written against Jacoco 0.8.5, check it again when upgrading: the class id must stay the CRC64 of the class bytes and
+ * {@link ClassProbesAdapter} must keep numbering the probes of a class method after method.
+ */
+final class JacocoInternals {
+
+    private JacocoInternals() {
+    }
+
+    /**
+     * @param bytes - class file content
+     * @return id of the class in execution data
+     */
+    static long classId(final byte[] bytes) {
+        return CRC64.classId(bytes);
+    }
+
+    /**
+     * @param bytes - class file content, of any class file version Jacoco supports
+     * @return VM name of the class
+     */
+    static String className(final byte[] bytes) {
+        return InstrSupport.classReaderFor(bytes).getClassName();
+    }
+
+    /**
+     * Reads the probe ids every method of a class owns, as numbered by the Jacoco agent
+     *
+     * @param bytes - class file content
+     * @return probes of the class
+     */
+    static ClassProbes readProbes(final byte[] bytes) {
+        final ProbesVisitor visitor = new ProbesVisitor();
+        InstrSupport.classReaderFor(bytes).accept(new ClassProbesAdapter(visitor, false) {
+            @Override
+            public int nextId() {
+                //Probe ids are handed out while the method being visited is the last one listed
+                final int id = super.nextId();
+                final MethodProbes method = visitor.methods.get(visitor.methods.size() - 1);
+                if (method.firstProbe < 0) {
+                    method.firstProbe = id;
+                }
+                method.lastProbe = id;
+                return id;
+            }
+        }, 0);
+        return new ClassProbes(Collections.unmodifiableList(visitor.methods), visitor.probeCount);
+    }
+
+    /**
+     * Probes of a class: the contiguous probe ids of each method and the probe count of the class
+     */
+    static final class ClassProbes {
+        final List<MethodProbes> methods;
+        final int probeCount;
+
+        private ClassProbes(final List<MethodProbes> methods, final int probeCount) {
+            this.methods = methods;
+            this.probeCount = probeCount;
+        }
+    }
+
+    /**
+     * Probe ids of a method, first and last are -1 for a method without probe
+     */
+    static final class MethodProbes {
+        final String method;
+        int firstProbe = -1;
+        int lastProbe = -1;
+
+        private MethodProbes(final String method) {
+            this.method = method;
+        }
+    }
+
+    private static final class ProbesVisitor extends ClassProbesVisitor {
+        private final List<MethodProbes> methods = new ArrayList<>();
+        private int probeCount;
+
+        @Override
+        public MethodProbesVisitor visitMethod(final int access, final String name, final String descriptor,
+                                               final String signature, final String[] exceptions) {
+            methods.add(new MethodProbes(name + descriptor));
+            return new MethodProbesVisitor() {
+            };
+        }
+
+        @Override
+        public void visitTotalProbeCount(final int count) {
+            probeCount = count;
+        }
+    }
+}
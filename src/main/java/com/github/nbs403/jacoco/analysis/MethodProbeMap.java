@@ -0,0 +1,180 @@
+package com.github.nbs403.jacoco.analysis;
+
+import org.apache.log4j.Logger;
+import org.jacoco.core.data.ExecutionData;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Maps the probes of the classes of class roots - directories or archives, see {@link ClassRoot} - to the methods
+ * that own them, so the methods a test executed can be read from its execution data without a full coverage analysis.
+ * Jacoco numbers the probes of a class method after method, so every method owns a contiguous range of probe ids.
+ * Classes rejected by the {@link ClassFilter} are skipped before their class file is read. Class files are indexed
+ * by class id, the CRC64 of their bytes. A class dumped with an id that is not indexed while a class file of the same
+ * name is, changed since the roots were scanned: the roots are scanned again, reading only the changed class files.
+ * Other unknown classes, e.g. library classes, resolve to no method.
+ */
+public final class MethodProbeMap {
+
+    private static final Logger LOG = Logger.getLogger(String.valueOf(MethodProbeMap.class));
+    private static final Map<ClassFilter, Map<List<File>, MethodProbeMap>> MAPS = new ConcurrentHashMap<>();
+
+    private final List<File> roots;
+    private final ClassFilter classFilter;
+    private final Map<Long, JacocoInternals.ClassProbes> classes = new ConcurrentHashMap<>();
+    private final Set<Long> unknownIds = ConcurrentHashMap.newKeySet();
+    private final Map<String, IndexedFile> indexedFiles = new HashMap<>();
+    private volatile Index index;
+
+    private MethodProbeMap(final List<File> roots, final ClassFilter classFilter) {
+        this.roots = roots;
+        this.classFilter = classFilter;
+    }
+
+    /**
+     * Returns the shared map of the given classes directories and archives, creating it on first use
+     *
+     * @param classRoots  - classes directories and archives
+     * @param classFilter - classes to map, other classes resolve to no method
+     * @return the map shared by this JVM for those roots and filter
+     */
+    public static MethodProbeMap forRoots(final List<File> classRoots, final ClassFilter classFilter) {
+        return MAPS.computeIfAbsent(classFilter, filter -> new ConcurrentHashMap<>()).computeIfAbsent(
+                classRoots.stream().map(File::getAbsoluteFile).collect(Collectors.toList()),
+                roots -> new MethodProbeMap(roots, classFilter));
+    }
+
+    /**
+     * Lists the methods of a class that have at least one probe hit
+     *
+     * @param executionData - execution data of the class
+     * @return name and descriptor, e.g. "run()V", of every executed method, empty if the class is unknown
+     * @throws IOException if the class files cannot be read
+     */
+    public List<String> getExecutedMethods(final ExecutionData executionData) throws IOException {
+        if (!classFilter.matches(executionData.getName())) {
+            return Collections.emptyList();
+        }
+        final JacocoInternals.ClassProbes classProbes = getProbes(executionData.getId(), executionData.getName());
+        final boolean[] probes = executionData.getProbes();
+        if (classProbes == null || classProbes.probeCount != probes.length) {
+            return Collections.emptyList();
+        }
+        final List<String> executed = new ArrayList<>();
+        for (final JacocoInternals.MethodProbes method : classProbes.methods) {
+            for (int probe = method.firstProbe; probe >= 0 && probe <= method.lastProbe; probe++) {
+                if (probes[probe]) {
+                    executed.add(method.method);
+                    break;
+                }
+            }
+        }
+        return executed;
+    }
+
+    private JacocoInternals.ClassProbes getProbes(final long classId, final String className) throws IOException {
+        final JacocoInternals.ClassProbes cached = classes.get(classId);
+        if (cached != null) {
+            return cached;
+        }
+        ClassRoot.ClassEntry entry = getIndex().files.get(classId);
+        if (entry == null && getIndex().names.contains(className) && unknownIds.add(classId)) {
+            //Scanned once per unknown id, a stale build of the class on the agent side does not rescan every time
+            LOG.debug(String.format("Class %s with id %016x is not indexed, scanning %s again", className, classId,
+                                    roots));
+            entry = scan().files.get(classId);
+        }
+        if (entry == null) {
+            return null;
+        }
+        final JacocoInternals.ClassProbes probes = JacocoInternals.readProbes(entry.read());
+        classes.put(classId, probes);
+        return probes;
+    }
+
+    private Index getIndex() throws IOException {
+        Index scanned = index;
+        if (scanned == null) {
+            synchronized (this) {
+                scanned = index;
+                if (scanned == null) {
+                    scanned = scan();
+                }
+            }
+        }
+        return scanned;
+    }
+
+    /**
+     * Lists the class files of the roots selected by the filter, reading only the new and changed ones to get their
+     * class id
+     *
+     * @return the new index, also published for later lookups
+     * @throws IOException if a root cannot be listed or a class file cannot be read
+     */
+    private synchronized Index scan() throws IOException {
+        final Map<Long, ClassRoot.ClassEntry> files = new HashMap<>();
+        final Set<String> names = new HashSet<>();
+        final Map<String, IndexedFile> scanned = new HashMap<>();
+        for (final File root : roots) {
+            for (final ClassRoot.ClassEntry entry : ClassRoot.forFile(root).list()) {
+                if (!classFilter.matches(entry.getName())) {
+                    continue;
+                }
+                IndexedFile indexed = indexedFiles.get(entry.getLocation());
+                if (indexed == null || indexed.version != entry.getVersion() || indexed.size != entry.getSize()) {
+                    indexed = new IndexedFile(entry.getVersion(), entry.getSize(),
+                                              JacocoInternals.classId(entry.read()));
+                }
+                scanned.put(entry.getLocation(), indexed);
+                files.put(indexed.classId, entry);
+                names.add(entry.getName());
+            }
+        }
+        indexedFiles.clear();
+        indexedFiles.putAll(scanned);
+        classes.keySet().retainAll(files.keySet());
+        final Index scannedIndex = new Index(files, names);
+        index = scannedIndex;
+        LOG.debug(String.format("Indexed %d class files of %s", files.size(), roots));
+        return scannedIndex;
+    }
+
+    /**
+     * Class files of the roots by class id, and their class names
+     */
+    private static final class Index {
+        private final Map<Long, ClassRoot.ClassEntry> files;
+        private final Set<String> names;
+
+        private Index(final Map<Long, ClassRoot.ClassEntry> files, final Set<String> names) {
+            this.files = files;
+            this.names = names;
+        }
+    }
+
+    /**
+     * Class id of a class file, valid while the file version and size are unchanged
+     */
+    private static final class IndexedFile {
+        private final long version;
+        private final long size;
+        private final long classId;
+
+        private IndexedFile(final long version, final long size, final long classId) {
+            this.version = version;
+            this.size = size;
+            this.classId = classId;
+        }
+    }
+}
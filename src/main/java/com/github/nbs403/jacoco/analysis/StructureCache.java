@@ -0,0 +1,344 @@
+package com.github.nbs403.jacoco.analysis;
+
+import org.apache.log4j.Logger;
+import org.jacoco.core.analysis.Analyzer;
+import org.jacoco.core.analysis.CoverageBuilder;
+import org.jacoco.core.analysis.IBundleCoverage;
+import org.jacoco.core.analysis.IClassCoverage;
+import org.jacoco.core.analysis.ICoverageVisitor;
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * JVM wide cache of class structure analysis for a class root, a classes directory or an archive, see
+ * {@link ClassRoot}.
+ * Every class file is parsed once and its coverage without execution data is kept, keyed by the file location and
+ * the class id (CRC64 of the class bytes). An entry is invalidated when the file version or size changes.
+ * Analyzing an execution data store only re-analyzes classes that have execution data, and only when their probes
+ * differ from the last analysis of that class. All other classes reuse the cached structure.
+ * Classes rejected by a {@link ClassFilter} are skipped before their class file is read.
+ * Many execution data stores can be applied to the structure in a single pass, see
+ * {@link #analyze(List, ClassFilter, List, List)}.
+ */
+public final class StructureCache {
+
+    private static final Logger LOG = Logger.getLogger(String.valueOf(StructureCache.class));
+    private static final Map<File, StructureCache> CACHES = new ConcurrentHashMap<>();
+    private static final int OVERLAY_BATCH = 64;
+
+    private final ClassRoot root;
+    private final Map<String, CachedClass> classes = new ConcurrentHashMap<>();
+
+    private StructureCache(final File root) {
+        this.root = ClassRoot.forFile(root);
+    }
+
+    /**
+     * Returns the shared cache of the given classes directory or archive, creating it on first use
+     *
+     * @param classRoot - classes directory or archive to analyze
+     * @return the cache shared by all analyses of that root in this JVM
+     */
+    public static StructureCache forRoot(final File classRoot) {
+        return CACHES.computeIfAbsent(classRoot.getAbsoluteFile(), StructureCache::new);
+    }
+
+    /**
+     * Builds the bundle coverage of the classes of several roots with the given execution data
+     *
+     * @param classRoots         - classes directories and archives
+     * @param classFilter        - classes to analyze
+     * @param executionDataStore - execution data content
+     * @param title              - title of the coverage bundle
+     * @return coverage analysis structure
+     * @throws IOException if a class file cannot be read or analyzed
+     */
+    public static IBundleCoverage analyze(final List<File> classRoots, final ClassFilter classFilter,
+                                          final ExecutionDataStore executionDataStore, final String title)
+            throws IOException {
+        final CoverageBuilder coverageBuilder = new CoverageBuilder();
+        for (final File classRoot : classRoots) {
+            forRoot(classRoot).analyze(executionDataStore, classFilter, coverageBuilder);
+        }
+        return coverageBuilder.getBundle(title);
+    }
+
+    /**
+     * Builds the bundle coverage of the classes of several roots for many execution data stores at once, e.g. all
+     * scenarios of a run. Classes are listed and their structure looked up once, then every store is applied to each
+     * class, classes being processed in parallel on the common fork/join pool. Stores hitting the same probes of a
+     * class share its analysis
+     *
+     * @param classRoots          - classes directories and archives
+     * @param classFilter         - classes to analyze
+     * @param executionDataStores - execution data contents, they must not change during the analysis
+     * @param titles              - titles of the coverage bundles, in stores order
+     * @return coverage analysis structure of every store, in stores order
+     * @throws IOException if a class file cannot be read or analyzed
+     */
+    public static List<IBundleCoverage> analyze(final List<File> classRoots, final ClassFilter classFilter,
+                                                final List<ExecutionDataStore> executionDataStores,
+                                                final List<String> titles) throws IOException {
+        final List<StructureCache> caches = new ArrayList<>();
+        final List<ClassRoot.ClassEntry> entries = new ArrayList<>();
+        for (final File classRoot : classRoots) {
+            final StructureCache cache = forRoot(classRoot);
+            final Set<String> seen = new HashSet<>();
+            for (final ClassRoot.ClassEntry entry : cache.root.list()) {
+                seen.add(entry.getLocation());
+                if (classFilter.matches(entry.getName())) {
+                    caches.add(cache);
+                    entries.add(entry);
+                }
+            }
+            cache.classes.keySet().retainAll(seen);
+        }
+        final IClassCoverage[][] coverages = new IClassCoverage[entries.size()][];
+        try {
+            ForkJoinPool.commonPool().invoke(new Overlay(caches, entries, executionDataStores, coverages, 0,
+                                                         entries.size()));
+        } catch (final UncheckedIOException e) {
+            throw e.getCause();
+        }
+        final List<IBundleCoverage> bundles = new ArrayList<>();
+        for (int store = 0; store < executionDataStores.size(); store++) {
+            final CoverageBuilder coverageBuilder = new CoverageBuilder();
+            for (final IClassCoverage[] classCoverages : coverages) {
+                if (classCoverages[store] != null) {
+                    coverageBuilder.visitCoverage(classCoverages[store]);
+                }
+            }
+            bundles.add(coverageBuilder.getBundle(titles.get(store)));
+        }
+        return bundles;
+    }
+
+    /**
+     * Builds the bundle coverage of the cached classes with the given execution data
+     *
+     * @param executionDataStore - execution data content
+     * @param title              - title of the coverage bundle
+     * @return coverage analysis structure
+     * @throws IOException if a class file cannot be read or analyzed
+     */
+    public IBundleCoverage analyze(final ExecutionDataStore executionDataStore, final String title) throws IOException {
+        final CoverageBuilder coverageBuilder = new CoverageBuilder();
+        analyze(executionDataStore, ClassFilter.ALL, coverageBuilder);
+        return coverageBuilder.getBundle(title);
+    }
+
+    /**
+     * Visits the coverage of every class of the cached root selected by the filter with the given execution data
+     *
+     * @param executionDataStore - execution data content
+     * @param classFilter        - classes to analyze
+     * @param coverageVisitor    - visitor receiving the coverage of every class
+     * @throws IOException if a class file cannot be read or analyzed
+     */
+    public void analyze(final ExecutionDataStore executionDataStore, final ClassFilter classFilter,
+                        final ICoverageVisitor coverageVisitor) throws IOException {
+        final Set<String> seen = new HashSet<>();
+        for (final ClassRoot.ClassEntry entry : root.list()) {
+            seen.add(entry.getLocation());
+            if (classFilter.matches(entry.getName())) {
+                refresh(entry).visit(executionDataStore, coverageVisitor);
+            }
+        }
+        classes.keySet().retainAll(seen);
+    }
+
+    /**
+     * @return number of class files currently cached
+     */
+    public int size() {
+        return classes.size();
+    }
+
+    /**
+     * Drops every cached class, they are read and parsed again by the next analysis
+     */
+    public void clear() {
+        classes.clear();
+    }
+
+    private CachedClass refresh(final ClassRoot.ClassEntry entry) throws IOException {
+        final CachedClass cached = classes.get(entry.getLocation());
+        if (cached != null && cached.version == entry.getVersion() && cached.size == entry.getSize()) {
+            //A re-indexed archive reads unchanged classes from its new zip file
+            cached.entry = entry;
+            return cached;
+        }
+        if (cached != null) {
+            LOG.debug(String.format("Class file %s changed, analyzing it again", entry.getLocation()));
+        }
+        final CachedClass loaded = new CachedClass(entry, entry.read());
+        classes.put(entry.getLocation(), loaded);
+        return loaded;
+    }
+
+    /**
+     * Analyzes a single class, returns null if the analyzer skips the class, e.g. synthetic classes
+     */
+    private static IClassCoverage analyzeClass(final byte[] bytes, final String location,
+                                               final ExecutionDataStore executionDataStore) throws IOException {
+        final IClassCoverage[] result = new IClassCoverage[1];
+        new Analyzer(executionDataStore, coverage -> result[0] = coverage).analyzeClass(bytes, location);
+        return result[0];
+    }
+
+    /**
+     * Applies every store to a range of classes, splitting the range until it is small enough
+     */
+    private static final class Overlay extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<StructureCache> caches;
+        private final List<ClassRoot.ClassEntry> entries;
+        private final List<ExecutionDataStore> executionDataStores;
+        private final IClassCoverage[][] coverages;
+        private final int from;
+        private final int to;
+
+        private Overlay(final List<StructureCache> caches, final List<ClassRoot.ClassEntry> entries,
+                        final List<ExecutionDataStore> executionDataStores, final IClassCoverage[][] coverages,
+                        final int from, final int to) {
+            this.caches = caches;
+            this.entries = entries;
+            this.executionDataStores = executionDataStores;
+            this.coverages = coverages;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > OVERLAY_BATCH) {
+                final int middle = (from + to) >>> 1;
+                invokeAll(new Overlay(caches, entries, executionDataStores, coverages, from, middle),
+                          new Overlay(caches, entries, executionDataStores, coverages, middle, to));
+                return;
+            }
+            try {
+                for (int i = from; i < to; i++) {
+                    coverages[i] = caches.get(i).refresh(entries.get(i)).overlay(executionDataStores);
+                }
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Last probes a class was analyzed with, and the resulting coverage
+     */
+    private static final class Memo {
+        private final boolean[] probes;
+        private final IClassCoverage coverage;
+
+        private Memo(final boolean[] probes, final IClassCoverage coverage) {
+            this.probes = probes;
+            this.coverage = coverage;
+        }
+    }
+
+    private static final class CachedClass {
+        private volatile ClassRoot.ClassEntry entry;
+        private final long version;
+        private final long size;
+        private final long classId;
+        private final String name;
+        private final IClassCoverage structure;
+        private volatile Memo memo;
+
+        private CachedClass(final ClassRoot.ClassEntry entry, final byte[] bytes) throws IOException {
+            this.entry = entry;
+            this.version = entry.getVersion();
+            this.size = entry.getSize();
+            this.classId = JacocoInternals.classId(bytes);
+            this.name = JacocoInternals.className(bytes);
+            this.structure = analyzeClass(bytes, entry.getLocation(), new ExecutionDataStore());
+        }
+
+        private void visit(final ExecutionDataStore executionDataStore, final ICoverageVisitor coverageVisitor)
+                throws IOException {
+            if (structure == null) {
+                //Skipped by the analyzer, no execution data can change that
+                return;
+            }
+            final ExecutionData executionData = executionDataStore.get(classId);
+            final IClassCoverage coverage;
+            if (executionData != null) {
+                coverage = covered(executionData, executionDataStore);
+            } else if (executionDataStore.contains(name)) {
+                //Execution data exists for another version of this class, the analyzer flags this as no match
+                coverage = analyzeClass(entry.read(), entry.getLocation(), executionDataStore);
+            } else {
+                coverage = structure;
+            }
+            coverageVisitor.visitCoverage(coverage);
+        }
+
+        /**
+         * Coverage of the class with every store, null for all if the analyzer skips the class
+         */
+        private IClassCoverage[] overlay(final List<ExecutionDataStore> executionDataStores) throws IOException {
+            final IClassCoverage[] coverages = new IClassCoverage[executionDataStores.size()];
+            if (structure == null) {
+                return coverages;
+            }
+            final List<Memo> memos = new ArrayList<>();
+            byte[] bytes = null;
+            for (int store = 0; store < coverages.length; store++) {
+                final ExecutionDataStore executionDataStore = executionDataStores.get(store);
+                final ExecutionData executionData = executionDataStore.get(classId);
+                if (executionData == null && !executionDataStore.contains(name)) {
+                    coverages[store] = structure;
+                    continue;
+                }
+                if (executionData != null) {
+                    for (final Memo memo : memos) {
+                        if (Arrays.equals(memo.probes, executionData.getProbes())) {
+                            coverages[store] = memo.coverage;
+                            break;
+                        }
+                    }
+                    if (coverages[store] != null) {
+                        continue;
+                    }
+                }
+                if (bytes == null) {
+                    bytes = entry.read();
+                }
+                coverages[store] = analyzeClass(bytes, entry.getLocation(), executionDataStore);
+                if (executionData != null) {
+                    memos.add(new Memo(executionData.getProbes(), coverages[store]));
+                }
+            }
+            return coverages;
+        }
+
+        private IClassCoverage covered(final ExecutionData executionData, final ExecutionDataStore executionDataStore)
+                throws IOException {
+            final Memo last = memo;
+            if (last != null && Arrays.equals(last.probes, executionData.getProbes())) {
+                return last.coverage;
+            }
+            final IClassCoverage coverage = analyzeClass(entry.read(), entry.getLocation(), executionDataStore);
+            memo = new Memo(executionData.getProbes().clone(), coverage);
+            return coverage;
+        }
+    }
+}
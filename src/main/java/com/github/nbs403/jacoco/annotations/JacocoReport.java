@@ -16,6 +16,29 @@ import static java.lang.annotation.RetentionPolicy.RUNTIME;
 @ExtendWith(JacocoReportExtension.class)
 public @interface JacocoReport {
     String scenario() default "";
+
+    /**
+     * host:port of the agents to collect coverage from, a bare host uses port 6400.
+     * Defaults to JACOCO_AGENTS, or to JACOCO_HOST and JACOCO_PORT
+     */
+    String[] agents() default {};
+
+    /**
+     * Formats of the reports of this test or scenario.
+     * Defaults to JACOCO_TEST_REPORT_FORMATS for test reports and JACOCO_REPORT_FORMATS for scenario reports
+     */
+    ReportFormat[] formats() default {};
+
+    /**
+     * Classes analyzed for the reports of this test or scenario, qualified names with * and ? wildcards, e.g.
+     * "com.acme.*". Defaults to JACOCO_INCLUDES, or all classes
+     */
+    String[] includes() default {};
+
+    /**
+     * Classes left out of the reports of this test or scenario, same syntax as includes. Defaults to JACOCO_EXCLUDES
+     */
+    String[] excludes() default {};
 }
 
 
@@ -0,0 +1,23 @@
+package com.github.nbs403.jacoco.annotations;
+
+/**
+ * Output formats of coverage reports
+ */
+public enum ReportFormat {
+    /**
+     * Browsable HTML report, index.html
+     */
+    HTML,
+    /**
+     * Jacoco XML report, jacoco.xml
+     */
+    XML,
+    /**
+     * Jacoco CSV report with one line per class, jacoco.csv
+     */
+    CSV,
+    /**
+     * Compact JSON summary of the bundle and package counters, jacoco-summary.json
+     */
+    JSON
+}
@@ -0,0 +1,179 @@
+package com.github.nbs403.jacoco.data;
+
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.ExecutionDataWriter;
+import org.jacoco.core.data.IExecutionDataVisitor;
+import org.jacoco.core.data.ISessionInfoVisitor;
+import org.jacoco.core.data.SessionInfo;
+import org.jacoco.core.data.SessionInfoStore;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Consumes a dump while it is read from the agents, instead of materializing it in an ExecFileLoader first and
+ * passing over it again to save and merge it.
+ * Every executed class is written as it arrives to the test's .exec file, through a buffered file channel, forwarded
+ * to a target - e.g. the live scenario data - and kept once for the test's report. Classes without any hit probe, most
+ * of a dump for a single test, are dropped as they arrive.
+ * The .exec file is written to a temporary file and only replaces the previous one on {@link #commit()}.
+ * Methods are synchronized so several agents can stream into one pipeline, and data arriving after the pipeline is
+ * closed - from an agent that timed out - is ignored. A failed write does not interrupt the agent stream, it stops
+ * writing and fails the commit.
+ */
+public final class DumpPipeline implements ISessionInfoVisitor, IExecutionDataVisitor, Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File execFile;
+    private final File tempFile;
+    private final FileChannel channel;
+    private final ExecutionDataWriter writer;
+    private final ISessionInfoVisitor sessionInfoTarget;
+    private final IExecutionDataVisitor executionDataTarget;
+    private final SessionInfoStore sessionInfoStore = new SessionInfoStore();
+    private final ExecutionDataStore executionDataStore = new ExecutionDataStore();
+    private int classCount;
+    private long byteCount;
+    private IOException failure;
+    private boolean closed;
+
+    /**
+     * @param execFile            - .exec file of the dump, null to not write one
+     * @param sessionInfoTarget   - receives the session infos of the dump, null for none
+     * @param executionDataTarget - receives the execution data of the dump, null for none
+     * @throws IOException if the temporary .exec file cannot be created
+     */
+    public DumpPipeline(final File execFile, final ISessionInfoVisitor sessionInfoTarget,
+                        final IExecutionDataVisitor executionDataTarget) throws IOException {
+        this.execFile = execFile;
+        this.sessionInfoTarget = sessionInfoTarget;
+        this.executionDataTarget = executionDataTarget;
+        if (execFile == null) {
+            tempFile = null;
+            channel = null;
+            writer = null;
+            return;
+        }
+        tempFile = ExecFiles.createTempFile(execFile);
+        channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.WRITE);
+        final OutputStream outputStream = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+        writer = new ExecutionDataWriter(outputStream);
+    }
+
+    @Override
+    public synchronized void visitSessionInfo(final SessionInfo info) {
+        if (closed) {
+            return;
+        }
+        write(() -> writer.visitSessionInfo(info));
+        sessionInfoStore.visitSessionInfo(info);
+        if (sessionInfoTarget != null) {
+            sessionInfoTarget.visitSessionInfo(info);
+        }
+    }
+
+    @Override
+    public synchronized void visitClassExecution(final ExecutionData data) {
+        if (closed) {
+            return;
+        }
+        classCount++;
+        if (!data.hasHits()) {
+            return;
+        }
+        write(() -> writer.visitClassExecution(data));
+        //A retried dump may send the class again, the store merges it
+        executionDataStore.visitClassExecution(data);
+        if (executionDataTarget != null) {
+            executionDataTarget.visitClassExecution(data);
+        }
+    }
+
+    /**
+     * Ends the dump: syncs the .exec file and moves it over the previous one. Later data is ignored
+     *
+     * @throws IOException if the .exec file cannot be written or moved
+     */
+    public synchronized void commit() throws IOException {
+        closed = true;
+        if (writer == null) {
+            return;
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        writer.flush();
+        channel.force(true);
+        byteCount = channel.size();
+        channel.close();
+        ExecFiles.replace(tempFile, execFile);
+    }
+
+    /**
+     * Ignores later data and deletes the .exec file of a dump that was not committed
+     *
+     * @throws IOException if the temporary file cannot be deleted
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        if (channel == null) {
+            return;
+        }
+        channel.close();
+        Files.deleteIfExists(tempFile.toPath());
+    }
+
+    /**
+     * @return session infos of the dump
+     */
+    public SessionInfoStore getSessionInfoStore() {
+        return sessionInfoStore;
+    }
+
+    /**
+     * @return execution data of the classes executed by the dump
+     */
+    public ExecutionDataStore getExecutionDataStore() {
+        return executionDataStore;
+    }
+
+    /**
+     * @return number of classes received, a class dumped by several agents is counted once per agent
+     */
+    public synchronized int getClassCount() {
+        return classCount;
+    }
+
+    /**
+     * @return size of the committed .exec file, 0 before commit or without file
+     */
+    public synchronized long getByteCount() {
+        return byteCount;
+    }
+
+    private void write(final Write write) {
+        if (writer == null || failure != null) {
+            return;
+        }
+        try {
+            write.run();
+        } catch (final IOException e) {
+            failure = e;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Write {
+        void run() throws IOException;
+    }
+}
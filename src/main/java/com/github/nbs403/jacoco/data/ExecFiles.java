@@ -0,0 +1,121 @@
+package com.github.nbs403.jacoco.data;
+
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.jacoco.core.data.ExecutionDataReader;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.ExecutionDataWriter;
+import org.jacoco.core.data.SessionInfoStore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Reading and crash safe writing of .exec files
+ */
+public final class ExecFiles {
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private ExecFiles() {
+    }
+
+    /**
+     * Writes execution data and session info to a temporary file next to outputFile, syncs it to disk, then moves it
+     * over outputFile. A crash while writing leaves the previous outputFile intact.
+     *
+     * @param outputFile         - .exec file
+     * @param sessionInfoStore   - session data
+     * @param executionDataStore - execution dump data
+     * @throws IOException if the file cannot be written or moved
+     */
+    public static void writeAtomically(final File outputFile, final SessionInfoStore sessionInfoStore,
+                                       final ExecutionDataStore executionDataStore) throws IOException {
+        final File tempFile = createTempFile(outputFile);
+        try {
+            try (final FileOutputStream fileStream = new FileOutputStream(tempFile);
+                 final OutputStream outputStream = new BufferedOutputStream(fileStream)) {
+                final ExecutionDataWriter dataWriter = new ExecutionDataWriter(outputStream);
+                sessionInfoStore.accept(dataWriter);
+                executionDataStore.accept(dataWriter);
+                dataWriter.flush();
+                fileStream.getFD().sync();
+            }
+            replace(tempFile, outputFile);
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+    }
+
+    /**
+     * @param outputFile - .exec file
+     * @return new temporary file next to outputFile, see {@link #replace(File, File)}
+     * @throws IOException if the directory of outputFile cannot be created
+     */
+    public static File createTempFile(final File outputFile) throws IOException {
+        final File directory = outputFile.getAbsoluteFile().getParentFile();
+        Files.createDirectories(directory.toPath());
+        return File.createTempFile(outputFile.getName(), TEMP_SUFFIX, directory);
+    }
+
+    /**
+     * Moves a fully written and synced temporary file over outputFile, atomically where the file system supports it
+     *
+     * @param tempFile   - temporary file from {@link #createTempFile(File)}
+     * @param outputFile - .exec file
+     * @throws IOException if the file cannot be moved
+     */
+    public static void replace(final File tempFile, final File outputFile) throws IOException {
+        try {
+            Files.move(tempFile.toPath(), outputFile.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (final AtomicMoveNotSupportedException e) {
+            Files.move(tempFile.toPath(), outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * @param sessionInfoStore   - session data
+     * @param executionDataStore - execution dump data
+     * @return size in bytes of the execution data and session info in .exec format
+     */
+    public static long size(final SessionInfoStore sessionInfoStore, final ExecutionDataStore executionDataStore) {
+        final CountingOutputStream outputStream = new CountingOutputStream(NullOutputStream.NULL_OUTPUT_STREAM);
+        try {
+            final ExecutionDataWriter dataWriter = new ExecutionDataWriter(outputStream);
+            sessionInfoStore.accept(dataWriter);
+            executionDataStore.accept(dataWriter);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return outputStream.getByteCount();
+    }
+
+    /**
+     * Reads an .exec file into the given stores, merging with their current content
+     *
+     * @param file               - .exec file
+     * @param sessionInfoStore   - session data target
+     * @param executionDataStore - execution data target
+     * @throws IOException if the file cannot be read
+     */
+    public static void read(final File file, final SessionInfoStore sessionInfoStore,
+                            final ExecutionDataStore executionDataStore) throws IOException {
+        try (final InputStream inputStream = new BufferedInputStream(new FileInputStream(file))) {
+            final ExecutionDataReader reader = new ExecutionDataReader(inputStream);
+            reader.setSessionInfoVisitor(sessionInfoStore);
+            reader.setExecutionDataVisitor(executionDataStore);
+            reader.read();
+        }
+    }
+}
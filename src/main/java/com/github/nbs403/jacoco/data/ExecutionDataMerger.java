@@ -0,0 +1,205 @@
+package com.github.nbs403.jacoco.data;
+
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.IExecutionDataVisitor;
+
+/**
+ * Merges execution data into a target store, covering the union of classes of both sides.
+ * The probes of every target class are mirrored as a packed long[] bitset, so merging a class is a word-wise OR and
+ * only probes that were not covered yet are written back to the target probe array.
+ * Incoming probes are packed into a buffer reused across calls and classes are indexed by a primitive id table, so
+ * merging classes already known to the target allocates nothing.
+ * The target store must only be changed through the merger once it is created. Instances are not thread safe.
+ */
+public final class ExecutionDataMerger implements IExecutionDataVisitor {
+
+    private final ExecutionDataStore target;
+    private final ClassTable classes = new ClassTable();
+    private long[] buffer = new long[8];
+    private int newClassCount;
+    private long newlyCoveredProbeCount;
+
+    /**
+     * @param target - store merged into, its current content is indexed once
+     */
+    public ExecutionDataMerger(final ExecutionDataStore target) {
+        this.target = target;
+        for (final ExecutionData data : target.getContents()) {
+            final boolean[] probes = data.getProbes();
+            classes.put(data.getId(), new Entry(data, ProbeBits.pack(probes, new long[ProbeBits.words(probes.length)])));
+        }
+    }
+
+    /**
+     * Merges every class of other into the target store
+     *
+     * @param other - execution data to merge, left unchanged
+     * @return the target store
+     */
+    public ExecutionDataStore merge(final ExecutionDataStore other) {
+        for (final ExecutionData data : other.getContents()) {
+            visitClassExecution(data);
+        }
+        return target;
+    }
+
+    /**
+     * Merges a single class into the target store
+     *
+     * @param data - execution data of the class, left unchanged
+     * @throws IllegalStateException if the target has a class with the same id but a different name or probe count
+     */
+    @Override
+    public void visitClassExecution(final ExecutionData data) {
+        final boolean[] probes = data.getProbes();
+        final Entry entry = classes.get(data.getId());
+        if (entry == null) {
+            final ExecutionData copy = new ExecutionData(data.getId(), data.getName(), probes.clone());
+            final long[] bits = ProbeBits.pack(probes, new long[ProbeBits.words(probes.length)]);
+            target.put(copy);
+            classes.put(data.getId(), new Entry(copy, bits));
+            newClassCount++;
+            newlyCoveredProbeCount += ProbeBits.cardinality(bits);
+            return;
+        }
+        entry.data.assertCompatibility(data.getId(), data.getName(), probes.length);
+        final long[] incoming = ProbeBits.pack(probes, buffer(probes.length));
+        final long[] current = entry.bits;
+        final boolean[] targetProbes = entry.data.getProbes();
+        for (int word = 0; word < current.length; word++) {
+            final long added = incoming[word] & ~current[word];
+            if (added != 0) {
+                current[word] |= added;
+                newlyCoveredProbeCount += Long.bitCount(added);
+                ProbeBits.set(targetProbes, word, added);
+            }
+        }
+    }
+
+    /**
+     * Checks if merging other would cover no new probe, without changing the target
+     *
+     * @param other - execution data to check
+     * @return true if every probe hit in other is already covered in the target
+     */
+    public boolean covers(final ExecutionDataStore other) {
+        for (final ExecutionData data : other.getContents()) {
+            if (!data.hasHits()) {
+                continue;
+            }
+            final Entry entry = classes.get(data.getId());
+            if (entry == null) {
+                return false;
+            }
+            final boolean[] probes = data.getProbes();
+            final long[] incoming = ProbeBits.pack(probes, buffer(probes.length));
+            for (int word = 0; word < entry.bits.length && word < ProbeBits.words(probes.length); word++) {
+                if ((incoming[word] & ~entry.bits[word]) != 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the target store
+     */
+    public ExecutionDataStore getTarget() {
+        return target;
+    }
+
+    /**
+     * @return number of classes added to the target since creation or the last counter reset
+     */
+    public int getNewClassCount() {
+        return newClassCount;
+    }
+
+    /**
+     * @return number of probes covered for the first time since creation or the last counter reset
+     */
+    public long getNewlyCoveredProbeCount() {
+        return newlyCoveredProbeCount;
+    }
+
+    /**
+     * Resets the new class and newly covered probe counters
+     */
+    public void resetCounters() {
+        newClassCount = 0;
+        newlyCoveredProbeCount = 0;
+    }
+
+    private long[] buffer(final int probeCount) {
+        final int words = ProbeBits.words(probeCount);
+        if (buffer.length < words) {
+            buffer = new long[Math.max(words, buffer.length * 2)];
+        }
+        return buffer;
+    }
+
+    private static final class Entry {
+        private final ExecutionData data;
+        private final long[] bits;
+
+        private Entry(final ExecutionData data, final long[] bits) {
+            this.data = data;
+            this.bits = bits;
+        }
+    }
+
+    /**
+     * Open addressing table of class id to entry, avoiding the Long boxing of a HashMap lookup
+     */
+    private static final class ClassTable {
+        private long[] ids = new long[64];
+        private Entry[] entries = new Entry[64];
+        private int size;
+
+        private Entry get(final long id) {
+            final int mask = ids.length - 1;
+            for (int slot = slot(id, mask); entries[slot] != null; slot = (slot + 1) & mask) {
+                if (ids[slot] == id) {
+                    return entries[slot];
+                }
+            }
+            return null;
+        }
+
+        private void put(final long id, final Entry entry) {
+            if ((size + 1) * 2 > ids.length) {
+                grow();
+            }
+            final int mask = ids.length - 1;
+            int slot = slot(id, mask);
+            while (entries[slot] != null && ids[slot] != id) {
+                slot = (slot + 1) & mask;
+            }
+            if (entries[slot] == null) {
+                size++;
+            }
+            ids[slot] = id;
+            entries[slot] = entry;
+        }
+
+        private void grow() {
+            final long[] oldIds = ids;
+            final Entry[] oldEntries = entries;
+            ids = new long[oldIds.length * 2];
+            entries = new Entry[oldEntries.length * 2];
+            size = 0;
+            for (int slot = 0; slot < oldIds.length; slot++) {
+                if (oldEntries[slot] != null) {
+                    put(oldIds[slot], oldEntries[slot]);
+                }
+            }
+        }
+
+        private static int slot(final long id, final int mask) {
+            final long mixed = id * 0x9E3779B97F4A7C15L;
+            return (int) (mixed ^ (mixed >>> 32)) & mask;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.github.nbs403.jacoco.data;
+
+/**
+ * Conversions between Jacoco boolean[] probe arrays and packed long[] bitsets, probe i being bit i % 64 of word i / 64
+ */
+public final class ProbeBits {
+
+    private static final int WORD_SHIFT = 6;
+    private static final int WORD_BITS = 64;
+
+    private ProbeBits() {
+    }
+
+    /**
+     * @param probeCount - number of probes
+     * @return number of long words needed to hold probeCount bits
+     */
+    public static int words(final int probeCount) {
+        return (probeCount + WORD_BITS - 1) >>> WORD_SHIFT;
+    }
+
+    /**
+     * Packs probes into target, clearing the words it uses
+     *
+     * @param probes - probe array
+     * @param target - bitset with at least words(probes.length) words
+     * @return target
+     */
+    public static long[] pack(final boolean[] probes, final long[] target) {
+        final int words = words(probes.length);
+        for (int word = 0; word < words; word++) {
+            long bits = 0L;
+            final int start = word << WORD_SHIFT;
+            final int end = Math.min(start + WORD_BITS, probes.length);
+            for (int probe = start; probe < end; probe++) {
+                if (probes[probe]) {
+                    bits |= 1L << (probe - start);
+                }
+            }
+            target[word] = bits;
+        }
+        return target;
+    }
+
+    /**
+     * Unpacks a bitset into a probe array
+     *
+     * @param bits       - packed probes
+     * @param probeCount - number of probes
+     * @return new probe array
+     */
+    public static boolean[] unpack(final long[] bits, final int probeCount) {
+        final boolean[] probes = new boolean[probeCount];
+        for (int word = 0; word < words(probeCount); word++) {
+            set(probes, word, bits[word]);
+        }
+        return probes;
+    }
+
+    /**
+     * Sets the probes of every bit set in one word
+     *
+     * @param probes - probe array
+     * @param word   - index of the word
+     * @param bits   - bits of the word to set
+     */
+    public static void set(final boolean[] probes, final int word, final long bits) {
+        long remaining = bits;
+        while (remaining != 0) {
+            probes[(word << WORD_SHIFT) + Long.numberOfTrailingZeros(remaining)] = true;
+            remaining &= remaining - 1;
+        }
+    }
+
+    /**
+     * @param bits - packed probes
+     * @return number of probes set
+     */
+    public static int cardinality(final long[] bits) {
+        int count = 0;
+        for (final long word : bits) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,480 @@
+package com.github.nbs403.jacoco.data;
+
+import org.apache.log4j.Logger;
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.IExecutionDataVisitor;
+import org.jacoco.core.data.ISessionInfoVisitor;
+import org.jacoco.core.data.SessionInfo;
+import org.jacoco.core.data.SessionInfoStore;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Append-only store of per test coverage keeping only the probes each test hit, instead of one full .exec file per
+ * test.
+ * The file starts with a magic number and a version, followed by records made of a type byte, a payload length and
+ * the payload. A class record gives the next class index to a class id, name and probe count, so each class is
+ * described once per file. A test record holds the test name, its scenario, its session infos and, for every class
+ * the test hit, the class index and the non zero 64 bit words of its probes. A run record, written before the first
+ * test record of each opened store, starts a new run: a test appended again in a later run replaces its records of the
+ * earlier runs, while the records of a test appended several times in the same run are merged.
+ * The file is read through memory mapped segments. Opening it scans the records once to build the class id index and
+ * the test index, a record left incomplete by a crash at the end of the file is truncated.
+ */
+public final class ProbeDeltaStore implements Closeable {
+
+    private static final Logger LOG = Logger.getLogger(String.valueOf(ProbeDeltaStore.class));
+    private static final Map<File, ProbeDeltaStore> STORES = new HashMap<>();
+    private static final int MAGIC = 0x4A504453;
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 5;
+    private static final byte CLASS_RECORD = 1;
+    private static final byte TEST_RECORD = 2;
+    private static final byte RUN_RECORD = 3;
+    private static final long SEGMENT_SIZE = 1L << 30;
+
+    private final File file;
+    private final FileChannel channel;
+    private final List<ClassEntry> classes = new ArrayList<>();
+    private final Map<Long, ClassEntry> classIndex = new HashMap<>();
+    private final Map<String, List<TestRecord>> testIndex = new LinkedHashMap<>();
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private long[] buffer = new long[1];
+    private long size;
+    private int run;
+    private boolean runStarted;
+
+    /**
+     * Opens the store file, creating it if missing
+     *
+     * @param file - store file
+     * @throws IOException if the file cannot be opened or is not a probe delta store
+     */
+    public ProbeDeltaStore(final File file) throws IOException {
+        this.file = file;
+        Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                   StandardOpenOption.WRITE);
+        try {
+            size = channel.size();
+            if (size < FILE_HEADER_SIZE) {
+                writeFileHeader();
+            } else {
+                scan();
+            }
+        } catch (final IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the shared store of the given file, opening it on first use
+     *
+     * @param file - store file
+     * @return the store shared by all tests of this JVM writing to that file, until {@link #closeAll()} ends the run
+     * @throws IOException if the file cannot be opened
+     */
+    public static synchronized ProbeDeltaStore forFile(final File file) throws IOException {
+        final File key = file.getAbsoluteFile();
+        ProbeDeltaStore store = STORES.get(key);
+        if (store == null) {
+            store = new ProbeDeltaStore(key);
+            STORES.put(key, store);
+        }
+        return store;
+    }
+
+    /**
+     * Closes all shared stores
+     */
+    public static synchronized void closeAll() {
+        for (final ProbeDeltaStore store : STORES.values()) {
+            try {
+                store.close();
+            } catch (final IOException e) {
+                LOG.warn("Failed closing probe delta store " + store.file, e);
+            }
+        }
+        STORES.clear();
+    }
+
+    /**
+     * Appends the coverage of one test. Classes without any hit probe are not written. The first append of this store
+     * starts a new run, replacing the records of the tests appended again in it
+     *
+     * @param test               - unique test id, e.g. test class#test method
+     * @param scenario           - scenario of the test, blank if none
+     * @param sessionInfoStore   - session infos of the test
+     * @param executionDataStore - execution data of the test
+     * @throws IOException if the record cannot be written
+     */
+    public synchronized void append(final String test, final String scenario, final SessionInfoStore sessionInfoStore,
+                                    final ExecutionDataStore executionDataStore) throws IOException {
+        final ByteArrayOutputStream records = new ByteArrayOutputStream();
+        final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        final DataOutputStream recordsOutput = new DataOutputStream(records);
+        final DataOutputStream payloadOutput = new DataOutputStream(payload);
+        final Map<Long, ClassEntry> newClasses = new LinkedHashMap<>();
+        if (!runStarted) {
+            recordsOutput.writeByte(RUN_RECORD);
+            recordsOutput.writeInt(0);
+        }
+        writeString(payloadOutput, test);
+        writeString(payloadOutput, scenario);
+        final List<SessionInfo> infos = sessionInfoStore.getInfos();
+        payloadOutput.writeInt(infos.size());
+        for (final SessionInfo info : infos) {
+            writeString(payloadOutput, info.getId());
+            payloadOutput.writeLong(info.getStartTimeStamp());
+            payloadOutput.writeLong(info.getDumpTimeStamp());
+        }
+        final ByteArrayOutputStream entries = new ByteArrayOutputStream();
+        final DataOutputStream entriesOutput = new DataOutputStream(entries);
+        int entryCount = 0;
+        for (final ExecutionData data : executionDataStore.getContents()) {
+            final boolean[] probes = data.getProbes();
+            final int words = ProbeBits.words(probes.length);
+            if (buffer.length < words) {
+                buffer = new long[Math.max(words, buffer.length * 2)];
+            }
+            ProbeBits.pack(probes, buffer);
+            int nonZeroWords = 0;
+            for (int word = 0; word < words; word++) {
+                if (buffer[word] != 0L) {
+                    nonZeroWords++;
+                }
+            }
+            if (nonZeroWords == 0) {
+                continue;
+            }
+            ClassEntry entry = classIndex.get(data.getId());
+            if (entry == null) {
+                entry = newClasses.get(data.getId());
+            }
+            if (entry == null) {
+                entry = new ClassEntry(classes.size() + newClasses.size(), data.getId(), data.getName(),
+                                       probes.length);
+                newClasses.put(entry.id, entry);
+                writeClassRecord(recordsOutput, entry);
+            } else if (entry.probeCount != probes.length) {
+                throw new IllegalStateException(String.format(
+                        "Incompatible execution data for class %s with id %016x.", data.getName(), data.getId()));
+            }
+            entriesOutput.writeInt(entry.index);
+            entriesOutput.writeInt(nonZeroWords);
+            for (int word = 0; word < words; word++) {
+                if (buffer[word] != 0L) {
+                    entriesOutput.writeInt(word);
+                    entriesOutput.writeLong(buffer[word]);
+                }
+            }
+            entryCount++;
+        }
+        payloadOutput.writeInt(entryCount);
+        entries.writeTo(payloadOutput);
+        payloadOutput.flush();
+        final long testOffset = size + records.size();
+        recordsOutput.writeByte(TEST_RECORD);
+        recordsOutput.writeInt(payload.size());
+        payload.writeTo(recordsOutput);
+        recordsOutput.flush();
+
+        write(ByteBuffer.wrap(records.toByteArray()), size);
+        size += records.size();
+        for (final ClassEntry entry : newClasses.values()) {
+            classes.add(entry);
+            classIndex.put(entry.id, entry);
+        }
+        if (!runStarted) {
+            runStarted = true;
+            run++;
+        }
+        index(test, new TestRecord(testOffset + RECORD_HEADER_SIZE, payload.size(), scenario, run));
+    }
+
+    /**
+     * @return names of all tests in the store, in the order they were first appended
+     */
+    public synchronized Set<String> getTests() {
+        return Collections.unmodifiableSet(new LinkedHashSet<>(testIndex.keySet()));
+    }
+
+    /**
+     * @param scenario - scenario name
+     * @return names of the tests appended for the given scenario, in the order they were first appended
+     */
+    public synchronized Set<String> getTests(final String scenario) {
+        final Set<String> tests = new LinkedHashSet<>();
+        for (final Map.Entry<String, List<TestRecord>> test : testIndex.entrySet()) {
+            for (final TestRecord record : test.getValue()) {
+                if (record.scenario.equals(scenario)) {
+                    tests.add(test.getKey());
+                }
+            }
+        }
+        return tests;
+    }
+
+    /**
+     * @return number of distinct classes hit by any test of the store
+     */
+    public synchronized int getClassCount() {
+        return classes.size();
+    }
+
+    /**
+     * Rebuilds the execution data of the given tests, merged
+     *
+     * @param tests - test names
+     * @return execution data hit by any of the tests
+     * @throws IOException if the store cannot be read
+     */
+    public ExecutionDataStore rebuild(final String... tests) throws IOException {
+        final ExecutionDataStore executionDataStore = new ExecutionDataStore();
+        read(Arrays.asList(tests), null, executionDataStore);
+        return executionDataStore;
+    }
+
+    /**
+     * Reads the merged coverage of the given tests into the given visitors. A test appended several times in its
+     * latest run, e.g. a repeated or parameterized test, contributes all its records of that run
+     *
+     * @param tests                 - test names
+     * @param sessionInfoVisitor    - receives the session infos of the tests, may be null
+     * @param executionDataVisitor  - receives one execution data per class hit by any of the tests
+     * @throws IOException if the store cannot be read
+     */
+    public synchronized void read(final Collection<String> tests, final ISessionInfoVisitor sessionInfoVisitor,
+                                  final IExecutionDataVisitor executionDataVisitor) throws IOException {
+        final long[][] bits = new long[classes.size()][];
+        for (final String test : tests) {
+            final List<TestRecord> records = testIndex.get(test);
+            if (records == null) {
+                throw new IllegalArgumentException("Unknown test " + test + " in " + file);
+            }
+            for (final TestRecord record : records) {
+                readTestRecord(region(record.offset, record.length), sessionInfoVisitor, bits);
+            }
+        }
+        for (int index = 0; index < bits.length; index++) {
+            if (bits[index] != null) {
+                final ClassEntry entry = classes.get(index);
+                executionDataVisitor.visitClassExecution(
+                        new ExecutionData(entry.id, entry.name, ProbeBits.unpack(bits[index], entry.probeCount)));
+            }
+        }
+    }
+
+    /**
+     * @return size of the store file in bytes
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        segments.clear();
+        channel.close();
+    }
+
+    private void readTestRecord(final ByteBuffer payload, final ISessionInfoVisitor sessionInfoVisitor,
+                                final long[][] bits) {
+        readString(payload);
+        readString(payload);
+        final int sessionCount = payload.getInt();
+        for (int session = 0; session < sessionCount; session++) {
+            final String id = readString(payload);
+            final long start = payload.getLong();
+            final long dump = payload.getLong();
+            if (sessionInfoVisitor != null) {
+                sessionInfoVisitor.visitSessionInfo(new SessionInfo(id, start, dump));
+            }
+        }
+        final int entryCount = payload.getInt();
+        for (int entry = 0; entry < entryCount; entry++) {
+            final int index = payload.getInt();
+            final int words = payload.getInt();
+            if (bits[index] == null) {
+                bits[index] = new long[ProbeBits.words(classes.get(index).probeCount)];
+            }
+            for (int word = 0; word < words; word++) {
+                final int wordIndex = payload.getInt();
+                bits[index][wordIndex] |= payload.getLong();
+            }
+        }
+    }
+
+    private void scan() throws IOException {
+        final ByteBuffer header = region(0, FILE_HEADER_SIZE);
+        final int magic = header.getInt();
+        final int version = header.getInt();
+        if (magic != MAGIC || version != VERSION) {
+            throw new IOException("Not a probe delta store, or unsupported version: " + file);
+        }
+        long position = FILE_HEADER_SIZE;
+        while (position + RECORD_HEADER_SIZE <= size) {
+            final ByteBuffer recordHeader = region(position, RECORD_HEADER_SIZE);
+            final byte type = recordHeader.get();
+            final int length = recordHeader.getInt();
+            final long offset = position + RECORD_HEADER_SIZE;
+            if (length < 0 || offset + length > size) {
+                break;
+            }
+            final ByteBuffer payload = region(offset, length);
+            if (type == CLASS_RECORD) {
+                final ClassEntry entry = new ClassEntry(classes.size(), payload.getLong(), readString(payload),
+                                                        payload.getInt());
+                classes.add(entry);
+                classIndex.put(entry.id, entry);
+            } else if (type == TEST_RECORD) {
+                final String test = readString(payload);
+                final String scenario = readString(payload);
+                index(test, new TestRecord(offset, length, scenario, run));
+            } else if (type == RUN_RECORD) {
+                run++;
+            } else {
+                throw new IOException(String.format("Unknown record type %d at offset %d of %s", type, position,
+                                                    file));
+            }
+            position = offset + length;
+        }
+        if (position < size) {
+            LOG.warn(String.format("Truncating incomplete record at offset %d of %s", position, file));
+            segments.clear();
+            channel.truncate(position);
+            size = position;
+        }
+    }
+
+    /**
+     * Adds a test record to the test index, dropping the records of the test from earlier runs
+     *
+     * @param test   - test id
+     * @param record - test record
+     */
+    private void index(final String test, final TestRecord record) {
+        final List<TestRecord> records = testIndex.computeIfAbsent(test, key -> new ArrayList<>());
+        if (!records.isEmpty() && records.get(0).run != record.run) {
+            records.clear();
+        }
+        records.add(record);
+    }
+
+    /**
+     * @param offset - offset in the file
+     * @param length - number of bytes
+     * @return read only view of the file region, positioned at its start
+     * @throws IOException if the region cannot be mapped
+     */
+    private ByteBuffer region(final long offset, final int length) throws IOException {
+        final int index = (int) (offset / SEGMENT_SIZE);
+        final long segmentStart = index * SEGMENT_SIZE;
+        if (offset + length > segmentStart + SEGMENT_SIZE) {
+            //Spans two segments, map the region on its own
+            return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        }
+        MappedByteBuffer segment = index < segments.size() ? segments.get(index) : null;
+        if (segment == null || segmentStart + segment.capacity() < offset + length) {
+            //Not mapped yet, or the file grew since the segment was mapped
+            segment = channel.map(FileChannel.MapMode.READ_ONLY, segmentStart,
+                                  Math.min(SEGMENT_SIZE, size - segmentStart));
+            while (segments.size() <= index) {
+                segments.add(null);
+            }
+            segments.set(index, segment);
+        }
+        final ByteBuffer view = segment.duplicate();
+        view.position((int) (offset - segmentStart));
+        view.limit((int) (offset - segmentStart) + length);
+        return view.slice();
+    }
+
+    private void writeFileHeader() throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        channel.truncate(0);
+        write(header, 0);
+        size = FILE_HEADER_SIZE;
+    }
+
+    private void write(final ByteBuffer bytes, final long position) throws IOException {
+        long filePosition = position;
+        while (bytes.hasRemaining()) {
+            filePosition += channel.write(bytes, filePosition);
+        }
+    }
+
+    private static void writeClassRecord(final DataOutputStream output, final ClassEntry entry) throws IOException {
+        final byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+        output.writeByte(CLASS_RECORD);
+        output.writeInt(Long.BYTES + Integer.BYTES + name.length + Integer.BYTES);
+        output.writeLong(entry.id);
+        output.writeInt(name.length);
+        output.write(name);
+        output.writeInt(entry.probeCount);
+    }
+
+    private static void writeString(final DataOutputStream output, final String value) throws IOException {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(final ByteBuffer input) {
+        final byte[] bytes = new byte[input.getInt()];
+        input.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static final class ClassEntry {
+        private final int index;
+        private final long id;
+        private final String name;
+        private final int probeCount;
+
+        private ClassEntry(final int index, final long id, final String name, final int probeCount) {
+            this.index = index;
+            this.id = id;
+            this.name = name;
+            this.probeCount = probeCount;
+        }
+    }
+
+    private static final class TestRecord {
+        private final long offset;
+        private final int length;
+        private final String scenario;
+        private final int run;
+
+        private TestRecord(final long offset, final int length, final String scenario, final int run) {
+            this.offset = offset;
+            this.length = length;
+            this.scenario = scenario;
+            this.run = run;
+        }
+    }
+}
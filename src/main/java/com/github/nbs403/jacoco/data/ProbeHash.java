@@ -0,0 +1,84 @@
+package com.github.nbs403.jacoco.data;
+
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Content hash of execution data: SHA-256 of the id and probe bits of every class with hits, in class id order.
+ * Dumps that hit exactly the same probes of the same class versions have the same hash, whatever their session
+ * infos, their class order or the classes they dumped without hits.
+ */
+public final class ProbeHash {
+
+    private static final int HASH_BYTES = 16;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private ProbeHash() {
+    }
+
+    /**
+     * @param executionDataStore - execution data to hash
+     * @return 32 hex characters content hash
+     */
+    public static String of(final ExecutionDataStore executionDataStore) {
+        return of(executionDataStore, "");
+    }
+
+    /**
+     * @param executionDataStore - execution data to hash
+     * @param scope              - settings the hash is scoped to, e.g. the formats and classes of a report, hashed
+     *                           after the probes
+     * @return 32 hex characters content hash
+     */
+    public static String of(final ExecutionDataStore executionDataStore, final String scope) {
+        final List<ExecutionData> classes = new ArrayList<>();
+        for (final ExecutionData data : executionDataStore.getContents()) {
+            if (data.hasHits()) {
+                classes.add(data);
+            }
+        }
+        classes.sort(Comparator.comparingLong(ExecutionData::getId));
+        final MessageDigest digest = sha256();
+        final ByteBuffer header = ByteBuffer.allocate(Long.BYTES + Integer.BYTES);
+        long[] bits = new long[8];
+        for (final ExecutionData data : classes) {
+            final boolean[] probes = data.getProbes();
+            header.clear();
+            header.putLong(data.getId()).putInt(probes.length);
+            digest.update(header.array());
+            final int words = ProbeBits.words(probes.length);
+            if (bits.length < words) {
+                bits = new long[words];
+            }
+            ProbeBits.pack(probes, bits);
+            final ByteBuffer packed = ByteBuffer.allocate(words * Long.BYTES);
+            packed.asLongBuffer().put(bits, 0, words);
+            digest.update(packed.array());
+        }
+        digest.update(scope.getBytes(StandardCharsets.UTF_8));
+        final byte[] hash = digest.digest();
+        final char[] hex = new char[HASH_BYTES * 2];
+        for (int i = 0; i < HASH_BYTES; i++) {
+            hex[2 * i] = HEX[(hash[i] >> 4) & 0xF];
+            hex[2 * i + 1] = HEX[hash[i] & 0xF];
+        }
+        return new String(hex);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            //Every Java platform implements SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.github.nbs403.jacoco.data;
+
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.SessionInfoStore;
+
+/**
+ * Deep copies of execution data and session info, safe to hand to another thread while the originals keep changing
+ */
+public final class Snapshots {
+
+    private Snapshots() {
+    }
+
+    /**
+     * @param executionDataStore - execution data to copy
+     * @return a new store with copies of every probe array
+     */
+    public static ExecutionDataStore copy(final ExecutionDataStore executionDataStore) {
+        final ExecutionDataStore copy = new ExecutionDataStore();
+        for (final ExecutionData data : executionDataStore.getContents()) {
+            copy.put(new ExecutionData(data.getId(), data.getName(), data.getProbes().clone()));
+        }
+        return copy;
+    }
+
+    /**
+     * @param sessionInfoStore - session infos to copy, session infos themselves are immutable
+     * @return a new store with the same session infos
+     */
+    public static SessionInfoStore copy(final SessionInfoStore sessionInfoStore) {
+        final SessionInfoStore copy = new SessionInfoStore();
+        sessionInfoStore.accept(copy);
+        return copy;
+    }
+
+    /**
+     * Probes set in a later snapshot of the same agent and not in an earlier one, e.g. the coverage of a test taken
+     * from an agent that is never reset. A class whose probe count changed - another version of the class - is new
+     *
+     * @param before - earlier snapshot
+     * @param after  - later snapshot
+     * @return a new store with, for every class of the later snapshot with newly set probes, after and not before
+     */
+    public static ExecutionDataStore newlySet(final ExecutionDataStore before, final ExecutionDataStore after) {
+        final ExecutionDataStore delta = new ExecutionDataStore();
+        for (final ExecutionData data : after.getContents()) {
+            final ExecutionData earlier = before.get(data.getId());
+            final boolean[] probes = data.getProbes();
+            final boolean[] previous = earlier == null || earlier.getProbes().length != probes.length
+                                       ? new boolean[probes.length] : earlier.getProbes();
+            final boolean[] newProbes = new boolean[probes.length];
+            boolean hit = false;
+            for (int i = 0; i < probes.length; i++) {
+                newProbes[i] = probes[i] && !previous[i];
+                hit |= newProbes[i];
+            }
+            if (hit) {
+                delta.put(new ExecutionData(data.getId(), data.getName(), newProbes));
+            }
+        }
+        return delta;
+    }
+}
@@ -0,0 +1,39 @@
+package com.github.nbs403.jacoco.extensions;
+
+import com.github.nbs403.jacoco.agent.AgentConnection;
+import com.github.nbs403.jacoco.agent.DifferentialCapture;
+import com.github.nbs403.jacoco.analysis.ClassRoot;
+import com.github.nbs403.jacoco.data.ProbeDeltaStore;
+import com.github.nbs403.jacoco.impact.TestImpactIndex;
+import com.github.nbs403.jacoco.metrics.CoverageMetrics;
+import com.github.nbs403.jacoco.report.ReportRenderQueue;
+import com.github.nbs403.jacoco.report.ScenarioSummaryReport;
+import com.github.nbs403.jacoco.report.SourceCache;
+import org.junit.platform.launcher.TestExecutionListener;
+import org.junit.platform.launcher.TestPlan;
+
+/**
+ * Test plan listener, registered through META-INF/services, finishing the coverage work left when all tests are done
+ */
+public class CoverageRunListener implements TestExecutionListener {
+
+    /**
+     * Waits for reports still queued for asynchronous rendering, writes the all scenarios report, closes agent
+     * connections, probe delta stores, indexed class archives and source archives, and saves the test impact index
+     * and the coverage metrics summary
+     *
+     * @param testPlan - finished test plan
+     */
+    @Override
+    public void testPlanExecutionFinished(final TestPlan testPlan) {
+        ReportRenderQueue.drainShared();
+        ScenarioSummaryReport.writeAll();
+        AgentConnection.closeAll();
+        DifferentialCapture.shared().clear();
+        ProbeDeltaStore.closeAll();
+        TestImpactIndex.saveAll();
+        ClassRoot.closeAll();
+        SourceCache.closeAll();
+        CoverageMetrics.writeSummary();
+    }
+}
@@ -1,21 +1,37 @@
 package com.github.nbs403.jacoco.extensions;
 
+import com.github.nbs403.jacoco.agent.AgentEndpoint;
+import com.github.nbs403.jacoco.agent.AgentGroup;
+import com.github.nbs403.jacoco.agent.CaptureCoordinator;
+import com.github.nbs403.jacoco.agent.CaptureMode;
+import com.github.nbs403.jacoco.agent.DifferentialCapture;
+import com.github.nbs403.jacoco.analysis.ClassFilter;
+import com.github.nbs403.jacoco.analysis.MethodProbeMap;
+import com.github.nbs403.jacoco.analysis.StructureCache;
+import com.github.nbs403.jacoco.data.DumpPipeline;
+import com.github.nbs403.jacoco.data.ExecFiles;
+import com.github.nbs403.jacoco.data.ExecutionDataMerger;
+import com.github.nbs403.jacoco.data.ProbeDeltaStore;
+import com.github.nbs403.jacoco.data.ProbeHash;
+import com.github.nbs403.jacoco.data.Snapshots;
+import com.github.nbs403.jacoco.impact.TestImpactIndex;
+import com.github.nbs403.jacoco.metrics.CoverageMetrics;
+import com.github.nbs403.jacoco.metrics.Phase;
+import com.github.nbs403.jacoco.report.ContentReports;
+import com.github.nbs403.jacoco.report.MultiFormatReport;
+import com.github.nbs403.jacoco.report.ReportRenderQueue;
+import com.github.nbs403.jacoco.report.ScenarioSummaryReport;
+import com.github.nbs403.jacoco.report.SourceCache;
 import com.github.nbs403.jacoco.utils.Constants;
+import com.github.nbs403.jacoco.utils.Settings;
 import com.github.nbs403.jacoco.annotations.JacocoReport;
+import com.github.nbs403.jacoco.annotations.ReportFormat;
 import org.apache.log4j.Logger;
-import org.jacoco.core.analysis.Analyzer;
-import org.jacoco.core.analysis.CoverageBuilder;
 import org.jacoco.core.analysis.IBundleCoverage;
 import org.jacoco.core.data.ExecutionData;
 import org.jacoco.core.data.ExecutionDataStore;
-import org.jacoco.core.data.ExecutionDataWriter;
 import org.jacoco.core.data.SessionInfoStore;
-import org.jacoco.core.tools.ExecDumpClient;
 import org.jacoco.core.tools.ExecFileLoader;
-import org.jacoco.report.DirectorySourceFileLocator;
-import org.jacoco.report.FileMultiReportOutput;
-import org.jacoco.report.IReportVisitor;
-import org.jacoco.report.html.HTMLFormatter;
 import org.junit.jupiter.api.extension.AfterTestExecutionCallback;
 import org.junit.jupiter.api.extension.BeforeTestExecutionCallback;
 import org.junit.jupiter.api.extension.ExtensionContext;
@@ -23,79 +39,128 @@ import org.junit.platform.commons.util.AnnotationUtils;
 import org.junit.platform.commons.util.StringUtils;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 
 import static org.junit.platform.commons.util.AnnotationUtils.isAnnotated;
 
 public class JacocoReportExtension implements BeforeTestExecutionCallback, AfterTestExecutionCallback {
 
-    @SuppressWarnings("unused")
     private static final ExtensionContext.Namespace NAMESPACE = ExtensionContext.Namespace
             .create("com", "github", "nbs403", "jacoco", "coverage", JacocoReportExtension.class.getSimpleName());
     private static final String TESTSFOLDER = "tests";
     private static final String SCENARIOSFOLDER = "scenarios";
+    private static final String ALLSCENARIOSFOLDER = "all-scenarios";
     private static final String MERGEDEXECFILENAME = "merged.exec";
+    private static final String PROBESTOREFILENAME = "tests.probes";
+    private static final String TESTIMPACTFILENAME = "test-impact.idx";
+    private static final String METRICSFILENAME = "coverage-metrics.json";
+    private static final String CONTENTEXECFILENAME = "coverage.exec";
     private static final int DEFAULTPORT = 6400;
+    private static final int DEFAULTCHECKPOINTINTERVAL = 50;
+    private static final int DEFAULTSOURCECACHECHARSM = 64;
+    private static final String CAPTUREWINDOWKEY = "captureWindow";
     private static final Logger LOG = Logger.getLogger(String.valueOf(JacocoReportExtension.class));
 
-    private static Integer port;
-    private static String host;
-
     final File reportDirectory = new File("build", "coveragereport");
     final File testsReportDirectory = new File(reportDirectory, TESTSFOLDER);
     final File scenariosReportDirectory = new File(reportDirectory, SCENARIOSFOLDER);
-    final File sourcesDirectory;
-    final File classesDirectory;
+    final List<File> sourceRoots;
+    final SourceCache sourceCache;
+    final List<File> classRoots;
+    final String includes;
+    final String excludes;
+    final ClassFilter classFilter;
+    final boolean asyncReports;
+    final boolean incrementalReports;
+    final boolean probeStore;
+    final boolean streamingDumps;
+    final boolean deduplicate;
+    final CaptureMode captureMode;
+    final ScenarioSummaryReport scenarioSummary;
+    final boolean testImpact;
+    final Set<ReportFormat> scenarioReportFormats;
+    final Set<ReportFormat> testReportFormats;
+    final List<AgentEndpoint> agents;
 
     public JacocoReportExtension() {
-        host = getEnvOrSystemProperty(Constants.JACOCO_HOST);
-        Objects.requireNonNull(host, "Jacoco host -JACOCO_HOST- cannot be null");
-        final String envPort = getEnvOrSystemProperty(Constants.JACOCO_PORT);
-        port = envPort == null ? DEFAULTPORT : Integer.parseInt(envPort);
-        sourcesDirectory = new File(Optional.ofNullable(getEnvOrSystemProperty(Constants.JACOCO_SOURCES_DIR))
-                                            .orElse("."));
-        classesDirectory = new File(Optional.ofNullable(getEnvOrSystemProperty(Constants.JACOCO_CLASSES_DIR))
-                                            .orElse("."));
-        System.setProperty(Constants.JACOCO_PORT, String.valueOf(port));
-        System.setProperty(Constants.JACOCO_CLASSES_DIR, classesDirectory.getAbsolutePath());
-        System.setProperty(Constants.JACOCO_SOURCES_DIR, sourcesDirectory.getAbsolutePath());
-    }
-
-    /**
-     * Simple helper method to check the passed key in environment variables first, then system properties
-     *
-     * @param key - key to get value for
-     * @return environment value - if exists - or System.getProperty value if exists, or null
-     */
-    @SuppressWarnings({"unused"})
-    private static String getEnvOrSystemProperty(final String key) {
-        //First check environment variables if set
-        if (System.getenv(key) != null) {
-            return System.getenv(key);
+        final String envAgents = Settings.getEnvOrSystemProperty(Constants.JACOCO_AGENTS);
+        final String envPort = Settings.getEnvOrSystemProperty(Constants.JACOCO_PORT);
+        final int port = envPort == null ? DEFAULTPORT : Integer.parseInt(envPort);
+        if (StringUtils.isNotBlank(envAgents)) {
+            agents = parseAgents(envAgents.split(","));
+        } else {
+            final String host = Settings.getEnvOrSystemProperty(Constants.JACOCO_HOST);
+            Objects.requireNonNull(host, "Jacoco host -JACOCO_HOST- cannot be null");
+            agents = StringUtils.isBlank(host) ? Collections.emptyList()
+                                               : Collections.singletonList(new AgentEndpoint(host, port));
+        }
+        sourceRoots = Settings.getFiles(Constants.JACOCO_SOURCES_DIR);
+        sourceCache = SourceCache.forRoots(sourceRoots, "utf-8", 4,
+                                           Settings.getInt(Constants.JACOCO_SOURCE_CACHE_CHARS_M,
+                                                           DEFAULTSOURCECACHECHARSM) * 1_000_000L);
+        classRoots = Settings.getFiles(Constants.JACOCO_CLASSES_DIR);
+        includes = Settings.getEnvOrSystemProperty(Constants.JACOCO_INCLUDES);
+        excludes = Settings.getEnvOrSystemProperty(Constants.JACOCO_EXCLUDES);
+        classFilter = ClassFilter.of(includes, excludes);
+        asyncReports = Settings.getBoolean(Constants.JACOCO_ASYNC_REPORTS, false);
+        incrementalReports = Settings.getBoolean(Constants.JACOCO_INCREMENTAL_REPORTS, false);
+        probeStore = Settings.getBoolean(Constants.JACOCO_PROBE_STORE, false);
+        streamingDumps = Settings.getBoolean(Constants.JACOCO_STREAMING_DUMPS, false);
+        deduplicate = Settings.getBoolean(Constants.JACOCO_DEDUPLICATE, false);
+        captureMode = CaptureMode.parse(Settings.getEnvOrSystemProperty(Constants.JACOCO_CAPTURE_MODE),
+                                        CaptureMode.RESET);
+        testImpact = Settings.getBoolean(Constants.JACOCO_TEST_IMPACT, false);
+        if (captureMode == CaptureMode.DIFFERENTIAL && (testImpact || probeStore)) {
+            //A differential dump only holds the probes no earlier test set, a test re-running covered code would be
+            //recorded as not executing it and never be selected again
+            throw new IllegalArgumentException(String.format(
+                    "%s=differential only captures the probes first set by each test, it cannot be combined with %s "
+                            + "or %s", Constants.JACOCO_CAPTURE_MODE, Constants.JACOCO_TEST_IMPACT,
+                    Constants.JACOCO_PROBE_STORE));
+        }
+        if (captureMode == CaptureMode.DIFFERENTIAL && deduplicate) {
+            LOG.warn(String.format("%s=differential: tests share reports of the probes they set first, not of all "
+                                           + "the probes they hit", Constants.JACOCO_CAPTURE_MODE));
         }
-        if (System.getProperty(key) != null) {
-            return System.getProperty(key);
+        scenarioReportFormats = MultiFormatReport.parse(Settings.getEnvOrSystemProperty(Constants.JACOCO_REPORT_FORMATS),
+                                                        EnumSet.of(ReportFormat.HTML));
+        testReportFormats = MultiFormatReport.parse(Settings.getEnvOrSystemProperty(Constants.JACOCO_TEST_REPORT_FORMATS),
+                                                    scenarioReportFormats);
+        scenarioSummary = Settings.getBoolean(Constants.JACOCO_ALL_SCENARIOS_REPORT, false)
+                          ? ScenarioSummaryReport.forDirectory(new File(reportDirectory, ALLSCENARIOSFOLDER),
+                                                               classRoots, classFilter, scenarioReportFormats,
+                                                               sourceCache)
+                          : null;
+        if (Settings.getBoolean(Constants.JACOCO_METRICS, false)) {
+            CoverageMetrics.enableSummary(new File(reportDirectory, METRICSFILENAME));
         }
-        return null;
+        System.setProperty(Constants.JACOCO_PORT, String.valueOf(port));
+        System.setProperty(Constants.JACOCO_CLASSES_DIR, classRoots.stream().map(File::getAbsolutePath)
+                                                                   .collect(Collectors.joining(",")));
+        System.setProperty(Constants.JACOCO_SOURCES_DIR, sourceRoots.stream().map(File::getAbsolutePath)
+                                                                    .collect(Collectors.joining(",")));
     }
 
-    /**
-     * Configures execution data dump client with default settings
-     *
-     * @return ExecDumpClient
-     */
-    @SuppressWarnings("MagicNumber")
-    private static ExecDumpClient getExecDumpClient() {
-        final ExecDumpClient client = new ExecDumpClient();
-        client.setDump(true);
-        client.setReset(true);
-        client.setRetryCount(3);
-        client.setRetryDelay(3000L);
-        return client;
+    private static List<AgentEndpoint> parseAgents(final String[] endpoints) {
+        final List<AgentEndpoint> parsed = new ArrayList<>();
+        for (final String endpoint : endpoints) {
+            if (StringUtils.isNotBlank(endpoint)) {
+                parsed.add(AgentEndpoint.parse(endpoint, DEFAULTPORT));
+            }
+        }
+        return parsed;
     }
 
     /**
@@ -107,8 +172,8 @@ public class JacocoReportExtension implements BeforeTestExecutionCallback, After
      *                on test annotation
      * @return boolean true if should execute dump task
      */
-    private static boolean shouldAttemptDump(final ExtensionContext context) {
-        if (StringUtils.isNotBlank(host)) {
+    private boolean shouldAttemptDump(final ExtensionContext context) {
+        if (!agents.isEmpty()) {
             //First check class annotation for JacocoReport. It can apply to all tests in the class
             final boolean classAnnotated = AnnotationUtils.isAnnotated(context.getTestClass(), JacocoReport.class);
             final boolean methodAnnotated = isAnnotated(context.getElement(), JacocoReport.class);
@@ -118,28 +183,94 @@ public class JacocoReportExtension implements BeforeTestExecutionCallback, After
     }
 
     /**
-     * Reads scenario name from JacocoReport tag either from the test if present or from the class.
+     * Reads JacocoReport tag either from the test if present or from the class.
      * Either test method or test class can be annotated with JacocoReport
      *
      * @param context    - context will the JacocoReport tag
-     * @return scenario name from JacocoReport tag
+     * @return JacocoReport tag of the test, empty if neither test method nor class is annotated
      */
     @SuppressWarnings("OptionalGetWithoutIsPresent")
-    private static String getScenarioName(final ExtensionContext context) {
-        //We know that we have the JacocoReport tag, check if scenario is specified
+    private static Optional<JacocoReport> getJacocoReport(final ExtensionContext context) {
         //First check the JacocoReport method annotation. It may override class annotation
         if (isAnnotated(context.getElement(), JacocoReport.class)) {
-            return context.getElement().get().getAnnotation(JacocoReport.class).scenario();
+            return Optional.of(context.getElement().get().getAnnotation(JacocoReport.class));
         }
         if (isAnnotated(context.getTestClass(), JacocoReport.class)) {
-            return context.getTestClass().get().getAnnotation(JacocoReport.class).scenario();
+            return Optional.of(context.getTestClass().get().getAnnotation(JacocoReport.class));
         }
+        return Optional.empty();
+    }
+
+    /**
+     * Reads scenario name from JacocoReport tag either from the test if present or from the class.
+     *
+     * @param context    - context will the JacocoReport tag
+     * @return scenario name from JacocoReport tag
+     */
+    private static String getScenarioName(final ExtensionContext context) {
+        //We know that we have the JacocoReport tag, check if scenario is specified
+        return getJacocoReport(context).map(JacocoReport::scenario).orElse("");
+    }
 
-        return "";
+    /**
+     * Agents listed by the JacocoReport tag, or the configured agents if it lists none
+     *
+     * @param context    - context will the JacocoReport tag
+     * @return agents to collect the test coverage from
+     */
+    private List<AgentEndpoint> getAgents(final ExtensionContext context) {
+        final String[] tagAgents = getJacocoReport(context).map(JacocoReport::agents).orElse(new String[0]);
+        return tagAgents.length == 0 ? agents : parseAgents(tagAgents);
     }
 
     /**
-     * Executes a dump task with reset execution data on server before each test enabled for coverage
+     * Report formats listed by the JacocoReport tag, or the configured formats of test or scenario reports if it lists
+     * none
+     *
+     * @param context    - context will the JacocoReport tag
+     * @param scenario   - true for the scenario report, false for the test report
+     * @return formats of the report
+     */
+    private Set<ReportFormat> getReportFormats(final ExtensionContext context, final boolean scenario) {
+        final ReportFormat[] tagFormats = getJacocoReport(context).map(JacocoReport::formats)
+                                                                  .orElse(new ReportFormat[0]);
+        if (tagFormats.length > 0) {
+            return EnumSet.copyOf(Arrays.asList(tagFormats));
+        }
+        return scenario ? scenarioReportFormats : testReportFormats;
+    }
+
+    /**
+     * Class filter of the JacocoReport tag. Its includes and excludes, when listed, replace the configured
+     * JACOCO_INCLUDES and JACOCO_EXCLUDES respectively
+     *
+     * @param context    - context will the JacocoReport tag
+     * @return classes to analyze for the reports of the test
+     */
+    private ClassFilter getClassFilter(final ExtensionContext context) {
+        final Optional<JacocoReport> jacocoReport = getJacocoReport(context);
+        final String tagIncludes = jacocoReport.map(tag -> String.join(",", tag.includes())).orElse("");
+        final String tagExcludes = jacocoReport.map(tag -> String.join(",", tag.excludes())).orElse("");
+        if (tagIncludes.isEmpty() && tagExcludes.isEmpty()) {
+            return classFilter;
+        }
+        return ClassFilter.of(tagIncludes.isEmpty() ? includes : tagIncludes,
+                              tagExcludes.isEmpty() ? excludes : tagExcludes);
+    }
+
+    /**
+     * @param context    - context will the JacocoReport tag
+     * @return metrics context of the test, attributing its phases to its scenario
+     */
+    private static CoverageMetrics.Context getMetricsContext(final ExtensionContext context) {
+        return CoverageMetrics.Context.of(getScenarioName(context), context.getDisplayName());
+    }
+
+    /**
+     * Resets execution data on server before each test enabled for coverage - or, in differential capture mode, makes
+     * sure a snapshot of the agents exists.
+     * Waits for exclusive capture of the agent first, so concurrent tests cannot mix their coverage. The capture window
+     * is kept in the test's store until the dump after the test
      *
      * @param context        - context will the JacocoReport tag
      * @throws IOException   - related to connection to jacoco agent host
@@ -149,7 +280,90 @@ public class JacocoReportExtension implements BeforeTestExecutionCallback, After
         if (shouldAttemptDump(context)) {
             return;
         }
-        getExecDumpClient().dump(host, port);
+        final CoverageMetrics.Scope scope = getMetricsContext(context).enter();
+        final CoverageMetrics.Timer timer = CoverageMetrics.start(Phase.BEFORE_TEST);
+        try {
+            final List<AgentEndpoint> testAgents = getAgents(context);
+            final CaptureCoordinator.CaptureWindow captureWindow;
+            final CoverageMetrics.Timer waitTimer = CoverageMetrics.start(Phase.CAPTURE_WAIT);
+            try {
+                captureWindow = CaptureCoordinator.shared().open(testAgents);
+            } finally {
+                waitTimer.close();
+            }
+            context.getStore(NAMESPACE).put(CAPTUREWINDOWKEY, captureWindow);
+            //In differential mode the snapshot after the previous test is usually the one before this test
+            final CoverageMetrics.Timer agentTimer = CoverageMetrics.start(
+                    captureMode == CaptureMode.DIFFERENTIAL ? Phase.AGENT_SNAPSHOT : Phase.AGENT_RESET);
+            try {
+                if (captureMode == CaptureMode.DIFFERENTIAL) {
+                    DifferentialCapture.shared().before(testAgents);
+                } else {
+                    AgentGroup.reset(testAgents);
+                }
+            } finally {
+                agentTimer.close();
+            }
+        } finally {
+            timer.close();
+            scope.close();
+        }
+    }
+
+    /**
+     * Dumps the agents execution data and closes the test's capture window, letting the next test capture
+     *
+     * @param context - context of the test
+     * @return loader holding the dumped execution data
+     * @throws IOException related to connection to jacoco agent host
+     */
+    private ExecFileLoader dump(final ExtensionContext context) throws IOException {
+        try (CoverageMetrics.Timer timer = CoverageMetrics.start(Phase.AGENT_DUMP)) {
+            final ExecFileLoader execFileLoader = captureMode == CaptureMode.DIFFERENTIAL
+                                                  ? DifferentialCapture.shared().after(getAgents(context))
+                                                  : AgentGroup.dump(getAgents(context), true);
+            timer.classes(execFileLoader.getExecutionDataStore().getContents().size());
+            if (timer.isRecorded()) {
+                timer.bytes(ExecFiles.size(execFileLoader.getSessionInfoStore(),
+                                           execFileLoader.getExecutionDataStore()));
+            }
+            return execFileLoader;
+        } finally {
+            closeCaptureWindow(context);
+        }
+    }
+
+    /**
+     * Streams the agents execution data into the pipeline, commits it and closes the test's capture window.
+     * In differential capture mode the whole snapshot is needed to compute the test's coverage, which is then passed
+     * to the pipeline
+     *
+     * @param context  - context of the test
+     * @param pipeline - receives the dump as it is read
+     * @throws IOException related to connection to jacoco agent host or writing the .exec file
+     */
+    private void dump(final ExtensionContext context, final DumpPipeline pipeline) throws IOException {
+        try (CoverageMetrics.Timer timer = CoverageMetrics.start(Phase.AGENT_DUMP)) {
+            if (captureMode == CaptureMode.DIFFERENTIAL) {
+                final ExecFileLoader delta = DifferentialCapture.shared().after(getAgents(context));
+                delta.getSessionInfoStore().accept(pipeline);
+                delta.getExecutionDataStore().accept(pipeline);
+            } else {
+                AgentGroup.dump(getAgents(context), true, pipeline, pipeline);
+            }
+            pipeline.commit();
+            timer.classes(pipeline.getClassCount()).bytes(pipeline.getByteCount());
+        } finally {
+            closeCaptureWindow(context);
+        }
+    }
+
+    private static void closeCaptureWindow(final ExtensionContext context) {
+        final CaptureCoordinator.CaptureWindow captureWindow =
+                context.getStore(NAMESPACE).remove(CAPTUREWINDOWKEY, CaptureCoordinator.CaptureWindow.class);
+        if (captureWindow != null) {
+            captureWindow.close();
+        }
     }
 
     /**
@@ -164,55 +378,225 @@ public class JacocoReportExtension implements BeforeTestExecutionCallback, After
         if (shouldAttemptDump(context)) {
             return;
         }
+        final CoverageMetrics.Scope scope = getMetricsContext(context).enter();
+        final CoverageMetrics.Timer timer = CoverageMetrics.start(Phase.AFTER_TEST);
+        try {
+            collect(context);
+        } finally {
+            timer.close();
+            scope.close();
+        }
+    }
 
-        final String title;
-        final File thisTestExecFile;
-        final ExecFileLoader execFileLoader = getExecDumpClient().dump(host, port);
-
+    /**
+     * Dumps, saves and reports the coverage of a test, see {@link #afterTestExecution(ExtensionContext)}
+     *
+     * @param context        - context will the JacocoReport tag
+     * @throws IOException related to connection to jacoco agent host
+     */
+    private void collect(final ExtensionContext context) throws IOException {
         final String scenarioName = getScenarioName(context);
-        final File reportDir;
-        //Not a scenario, just save the exec file
-        if (StringUtils.isBlank(scenarioName)) {
-            title = context.getDisplayName();
-            reportDir = new File(testsReportDirectory, title);
-            thisTestExecFile = new File(reportDir, title + ".exec");
-            execFileLoader.save(thisTestExecFile, true); //append can be false too, this is a new file
-            final IBundleCoverage bundleCoverage = analyzeStructure(execFileLoader.getExecutionDataStore(), title);
-            createReport(bundleCoverage, execFileLoader.getSessionInfoStore(), execFileLoader.getExecutionDataStore(),
-                         reportDir);
+        //Not a scenario, the report is the test's own. Otherwise merge into the scenario data kept in memory for the
+        //whole test plan, merged.exec is written at checkpoints
+        final boolean scenario = StringUtils.isNotBlank(scenarioName);
+        final String title = scenario ? scenarioName : context.getDisplayName();
+        final File reportDir = new File(scenario ? scenariosReportDirectory : testsReportDirectory, title);
+        final File thisTestExecFile = new File(reportDir, context.getDisplayName() + ".exec");
+        final ScenarioAccumulator accumulator = scenario ? getScenarioAccumulator(context, reportDir) : null;
+        if (accumulator != null && scenarioSummary != null) {
+            scenarioSummary.add(scenarioName, accumulator.getSessionInfoStore(), accumulator.getExecutionDataStore());
+        }
+        //With JACOCO_DEDUPLICATE a test's .exec and report are written once per probe content, see reportShared
+        final boolean shared = deduplicate && !scenario;
+
+        final SessionInfoStore sessionInfoStore;
+        final ExecutionDataStore executionDataStore;
+        if (streamingDumps) {
+            //The .exec file is written and the scenario merged while the dump is read
+            try (DumpPipeline pipeline = new DumpPipeline(probeStore || shared ? null : thisTestExecFile, accumulator,
+                                                          accumulator)) {
+                dump(context, pipeline);
+                sessionInfoStore = pipeline.getSessionInfoStore();
+                executionDataStore = pipeline.getExecutionDataStore();
+            }
+            if (probeStore) {
+                saveTestExecution(context, scenarioName, sessionInfoStore, executionDataStore, thisTestExecFile);
+            }
+            if (accumulator != null) {
+                accumulator.completeTest();
+            }
         } else {
-            //If merged.exec file exist, write a new one
-            title = scenarioName;
-            reportDir = new File(scenariosReportDirectory, title);
-            final File mergedExecFile = new File(reportDir, MERGEDEXECFILENAME);
-            if (!mergedExecFile.exists()) {
-                //First run for this scenario, create a merged.exec
-                execFileLoader.save(mergedExecFile, true);
-                final IBundleCoverage bundleCoverage = analyzeStructure(execFileLoader.getExecutionDataStore(), title);
-                createReport(bundleCoverage, execFileLoader.getSessionInfoStore(), execFileLoader.getExecutionDataStore(),
-                             reportDir);
-            } else {
-                //Not first run for this scenario, keep merged file and create new one for this run
-                thisTestExecFile = new File(reportDir, context.getDisplayName() + ".exec");
-                execFileLoader.save(thisTestExecFile, true);
-                //Here, we need to merge exec files
-                final ExecFileLoader mergedExecFileLoader = new ExecFileLoader();
-                mergedExecFileLoader.load(mergedExecFile);
-                final ExecutionDataStore mergedDataStore =
-                        merge(mergedExecFileLoader.getExecutionDataStore(), execFileLoader.getExecutionDataStore());
-                //Merging session info is not really needed, it just had time stamp for when the session started
-                final SessionInfoStore mergedSessionInfoStore =
-                        merge(mergedExecFileLoader.getSessionInfoStore(), execFileLoader.getSessionInfoStore());
-                save(mergedExecFile, mergedSessionInfoStore, mergedDataStore);
-                final IBundleCoverage bundleCoverage = analyzeStructure(mergedDataStore, title);
-                createReport(bundleCoverage, mergedSessionInfoStore, mergedDataStore, reportDir);
+            final ExecFileLoader execFileLoader = dump(context);
+            sessionInfoStore = execFileLoader.getSessionInfoStore();
+            executionDataStore = execFileLoader.getExecutionDataStore();
+            if (probeStore || !shared) {
+                saveTestExecution(context, scenarioName, sessionInfoStore, executionDataStore, thisTestExecFile);
+            }
+            if (accumulator != null && deduplicate && accumulator.covers(executionDataStore)) {
+                LOG.debug(String.format("%s covers no new probe of scenario %s, not merged", context.getDisplayName(),
+                                        scenarioName));
+            } else if (accumulator != null) {
+                try (CoverageMetrics.Timer timer = CoverageMetrics.start(Phase.MERGE)) {
+                    timer.classes(executionDataStore.getContents().size());
+                    accumulator.add(executionDataStore, sessionInfoStore);
+                }
+            }
+        }
 
+        if (testImpact) {
+            TestImpactIndex.forFile(new File(reportDirectory, TESTIMPACTFILENAME)).record(
+                    getTestId(context), scenarioName, executionDataStore, MethodProbeMap.forRoots(classRoots, classFilter));
+        }
+        if (shared) {
+            reportShared(context, sessionInfoStore, executionDataStore, reportDir);
+            return;
+        }
+        if (accumulator == null) {
+            report(title, sessionInfoStore, executionDataStore, reportDir, getReportFormats(context, false),
+                   getClassFilter(context));
+            return;
+        }
+        synchronized (accumulator) {
+            if (deduplicate && !accumulator.takeNewCoverage()) {
+                LOG.debug(String.format("No new coverage in scenario %s, report not rendered again", scenarioName));
+                return;
             }
+            report(title, accumulator.getSessionInfoStore(), accumulator.getExecutionDataStore(), reportDir,
+                   getReportFormats(context, true), getClassFilter(context));
+        }
+    }
+
+    /**
+     * Reports a test in the content-addressed layout of {@link ContentReports}: the first test of the run hitting a
+     * given set of probes writes its .exec file - unless JACOCO_PROBE_STORE already recorded it - and its report to
+     * content/&lt;hash&gt;, every test links its own report directory to it. The report is titled after the hash, as
+     * it stands for every test of the same probes
+     *
+     * @param context            - context of the test
+     * @param sessionInfoStore   - dumped session infos of the test
+     * @param executionDataStore - dumped execution data of the test
+     * @param reportDir          - report directory of the test, holding the link
+     * @throws IOException if the execution data, report or link cannot be written
+     */
+    private void reportShared(final ExtensionContext context, final SessionInfoStore sessionInfoStore,
+                              final ExecutionDataStore executionDataStore, final File reportDir) throws IOException {
+        final Set<ReportFormat> formats = getReportFormats(context, false);
+        final ClassFilter reportFilter = getClassFilter(context);
+        //Tests with other formats or classes get their own report of the same probes
+        final String hash = ProbeHash.of(executionDataStore, formats + "|" + getJacocoReport(context).map(
+                tag -> String.join(",", tag.includes()) + "|" + String.join(",", tag.excludes())).orElse(""));
+        final ContentReports contentReports = ContentReports.forDirectory(reportDirectory);
+        if (contentReports.claim(hash)) {
+            final File contentDir = contentReports.getDirectory(hash);
+            if (!probeStore) {
+                saveTestExecution(context, "", sessionInfoStore, executionDataStore,
+                                  new File(contentDir, CONTENTEXECFILENAME));
+            }
+            report(hash, sessionInfoStore, executionDataStore, contentDir, formats, reportFilter);
+        } else {
+            LOG.debug(String.format("%s hit the same probes as a previous test, sharing report %s",
+                                    context.getDisplayName(), hash));
+        }
+        contentReports.link(reportDir, hash);
+    }
+
+    /**
+     * Saves the execution data of a single test, to its own .exec file or - with JACOCO_PROBE_STORE - as a record of
+     * the hit probes only in the shared {@link ProbeDeltaStore} of the report directory
+     *
+     * @param context            - context of the test
+     * @param scenarioName       - scenario of the test, blank if none
+     * @param sessionInfoStore   - dumped session infos of the test
+     * @param executionDataStore - dumped execution data of the test
+     * @param execFile           - .exec file of the test
+     * @throws IOException if the execution data cannot be written
+     */
+    private void saveTestExecution(final ExtensionContext context, final String scenarioName,
+                                   final SessionInfoStore sessionInfoStore,
+                                   final ExecutionDataStore executionDataStore, final File execFile)
+            throws IOException {
+        try (CoverageMetrics.Timer timer = CoverageMetrics.start(Phase.SAVE)) {
+            timer.classes(executionDataStore.getContents().size());
+            if (probeStore) {
+                final ProbeDeltaStore store = ProbeDeltaStore.forFile(new File(reportDirectory, PROBESTOREFILENAME));
+                final long sizeBefore = store.size();
+                store.append(getTestId(context), scenarioName, sessionInfoStore, executionDataStore);
+                timer.bytes(store.size() - sizeBefore);
+                return;
+            }
+            ExecFiles.writeAtomically(execFile, sessionInfoStore, executionDataStore);
+            timer.bytes(execFile.length());
+        }
+    }
+
+    /**
+     * @param context - context of the test
+     * @return id of the test shared by the probe delta store and the test impact index: test class#test method
+     */
+    private static String getTestId(final ExtensionContext context) {
+        return context.getRequiredTestClass().getName() + "#" + context.getRequiredTestMethod().getName();
+    }
+
+    /**
+     * Gets the scenario accumulator from the root context store, creating it for the first test of the scenario.
+     * The root store closes it - writing merged.exec - at the end of the test plan
+     *
+     * @param context   - context of the test
+     * @param reportDir - report directory of the scenario
+     * @return live execution data of the scenario
+     */
+    private static ScenarioAccumulator getScenarioAccumulator(final ExtensionContext context, final File reportDir) {
+        return context.getRoot().getStore(NAMESPACE).getOrComputeIfAbsent(
+                reportDir.getAbsolutePath(), key -> {
+                    try {
+                        return new ScenarioAccumulator(new File(reportDir, MERGEDEXECFILENAME), Settings.getInt(
+                                Constants.JACOCO_SCENARIO_CHECKPOINT_INTERVAL, DEFAULTCHECKPOINTINTERVAL));
+                    } catch (final IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, ScenarioAccumulator.class);
+    }
+
+    /**
+     * Analyzes and reports coverage, on the test thread or - with JACOCO_ASYNC_REPORTS - on the shared render queue
+     * with a snapshot of the execution data and session info
+     *
+     * @param title              - title of the coverage report
+     * @param sessionInfoStore   - session infos store
+     * @param executionDataStore - execution data content
+     * @param reportDir          - base directory where the report will be generated
+     * @param formats            - formats of the report, nothing is analyzed if empty
+     * @param reportFilter       - classes of the report
+     * @throws IOException if errors during analysis or saving report locally
+     */
+    private void report(final String title, final SessionInfoStore sessionInfoStore,
+                        final ExecutionDataStore executionDataStore, final File reportDir,
+                        final Set<ReportFormat> formats, final ClassFilter reportFilter) throws IOException {
+        if (formats.isEmpty()) {
+            return;
+        }
+        if (!asyncReports) {
+            createReport(analyzeStructure(executionDataStore, title, reportFilter), sessionInfoStore,
+                         executionDataStore, reportDir, formats);
+            return;
         }
+        final SessionInfoStore sessionInfoSnapshot = Snapshots.copy(sessionInfoStore);
+        final ExecutionDataStore executionDataSnapshot = Snapshots.copy(executionDataStore);
+        final CoverageMetrics.Context metricsContext = CoverageMetrics.currentContext();
+        ReportRenderQueue.shared().submit(reportDir, () -> {
+            final CoverageMetrics.Scope scope = metricsContext.enter();
+            try {
+                createReport(analyzeStructure(executionDataSnapshot, title, reportFilter), sessionInfoSnapshot,
+                             executionDataSnapshot, reportDir, formats);
+            } finally {
+                scope.close();
+            }
+        });
     }
 
     /**
-     * Generates an HTML report from the execution data in the specified directory
+     * Generates an HTML report from the execution data in the specified directory.
+     * With JACOCO_INCREMENTAL_REPORTS only pages whose coverage changed since the previous report are rewritten
      *
      * @param bundleCoverage      - report formatter visitor
      * @param sessionInfoStore    - session infos store
@@ -222,20 +606,34 @@ public class JacocoReportExtension implements BeforeTestExecutionCallback, After
      */
     public void createReport(final IBundleCoverage bundleCoverage, final SessionInfoStore sessionInfoStore, final ExecutionDataStore executionDataStore,
                              final File reportBaseDirectory) throws IOException {
+        createReport(bundleCoverage, sessionInfoStore, executionDataStore, reportBaseDirectory,
+                     EnumSet.of(ReportFormat.HTML));
+    }
 
-        final HTMLFormatter htmlFormatter = new HTMLFormatter();
-        final IReportVisitor visitor = htmlFormatter.createVisitor(new FileMultiReportOutput(reportBaseDirectory));
-        // Initialize the report with all of the execution and session
-        visitor.visitInfo(sessionInfoStore.getInfos(), executionDataStore.getContents());
-        // Call visitGroup if you need groups in your report.
-        visitor.visitBundle(bundleCoverage,
-                            new DirectorySourceFileLocator(sourcesDirectory, "utf-8", 4));
-        // Write all out
-        visitor.visitEnd();
+    /**
+     * Generates a report in each of the given formats from a single traversal of the coverage, see
+     * {@link MultiFormatReport}
+     *
+     * @param bundleCoverage      - report formatter visitor
+     * @param sessionInfoStore    - session infos store
+     * @param executionDataStore  - execution data content
+     * @param reportBaseDirectory - base directory where the report will be generated
+     * @param formats             - formats of the report
+     * @throws IOException if errors during saving report locally
+     */
+    public void createReport(final IBundleCoverage bundleCoverage, final SessionInfoStore sessionInfoStore,
+                             final ExecutionDataStore executionDataStore, final File reportBaseDirectory,
+                             final Set<ReportFormat> formats) throws IOException {
+        try (CoverageMetrics.Timer timer = CoverageMetrics.start(Phase.REPORT)) {
+            timer.classes(bundleCoverage.getClassCounter().getTotalCount());
+            MultiFormatReport.render(formats, incrementalReports, bundleCoverage, sessionInfoStore,
+                                     executionDataStore, reportBaseDirectory,
+                                     sourceCache);
+        }
     }
 
     /**
-     * Performs structure analysis
+     * Performs structure analysis of the classes selected by JACOCO_INCLUDES and JACOCO_EXCLUDES
      *
      * @param executionDataStore - execution data content
      * @param title              - title of the coverage report
@@ -243,14 +641,31 @@ public class JacocoReportExtension implements BeforeTestExecutionCallback, After
      * @throws IOException if any exception thrown loading execution data store
      */
     public IBundleCoverage analyzeStructure(final ExecutionDataStore executionDataStore, final String title) throws IOException {
-        final CoverageBuilder coverageBuilder = new CoverageBuilder();
-        final Analyzer analyzer = new Analyzer(executionDataStore, coverageBuilder);
-        analyzer.analyzeAll(classesDirectory);
-        return coverageBuilder.getBundle(title);
+        return analyzeStructure(executionDataStore, title, classFilter);
     }
 
     /**
-     * Writes execution data and session info to .exec file
+     * Performs structure analysis of the classes of all class roots selected by the filter. Class files are parsed
+     * once per JVM and cached, see {@link StructureCache}
+     *
+     * @param executionDataStore - execution data content
+     * @param title              - title of the coverage report
+     * @param analysisFilter     - classes to analyze
+     * @return  coverage analysis structure
+     * @throws IOException if any exception thrown loading execution data store
+     */
+    public IBundleCoverage analyzeStructure(final ExecutionDataStore executionDataStore, final String title,
+                                            final ClassFilter analysisFilter) throws IOException {
+        try (CoverageMetrics.Timer timer = CoverageMetrics.start(Phase.ANALYZE)) {
+            final IBundleCoverage bundleCoverage =
+                    StructureCache.analyze(classRoots, analysisFilter, executionDataStore, title);
+            timer.classes(bundleCoverage.getClassCounter().getTotalCount());
+            return bundleCoverage;
+        }
+    }
+
+    /**
+     * Writes execution data and session info to .exec file, replacing it atomically
      *
      * @param outputFile         - .exec file
      * @param sessionInfoStore   - session data
@@ -258,30 +673,35 @@ public class JacocoReportExtension implements BeforeTestExecutionCallback, After
      * @throws IOException if any exception thrown loading execution data store
      */
     public void save(final File outputFile, final SessionInfoStore sessionInfoStore, final ExecutionDataStore executionDataStore) throws IOException {
-        try (final FileOutputStream outputStream = new FileOutputStream(outputFile.getAbsolutePath())) {
-            final ExecutionDataWriter dataWriter = new ExecutionDataWriter(outputStream);
-            executionDataStore.accept(dataWriter);
-            sessionInfoStore.accept(dataWriter);
-            dataWriter.flush();
+        try (CoverageMetrics.Timer timer = CoverageMetrics.start(Phase.SAVE)) {
+            timer.classes(executionDataStore.getContents().size());
+            ExecFiles.writeAtomically(outputFile, sessionInfoStore, executionDataStore);
+            timer.bytes(outputFile.length());
         }
     }
 
     /**
-     * Merges two execution data stores
+     * Merges two execution data stores. Classes only present in other are added to target. The target is indexed on
+     * every call, repeated merges into the same target should hold an {@link ExecutionDataMerger} instead, as
+     * {@link ScenarioAccumulator} does
      *
      * @param target - target of merge
      * @param other  - other source of merge
      * @return       - merged execution data store
      */
     public ExecutionDataStore merge(final ExecutionDataStore target, final ExecutionDataStore other) {
-        for (final ExecutionData targetExecutionData : target.getContents()) {
-            final ExecutionData otherExecutionData = other.get(targetExecutionData.getId());
-            if (otherExecutionData == null) {
-                LOG.info("Execution data was null. This is expected for auto-generated and excluded code");
-            } else {
-                targetExecutionData.merge(otherExecutionData);
+        final Collection<ExecutionData> contents = other.getContents();
+        final ExecutionDataMerger merger;
+        try (CoverageMetrics.Timer timer = CoverageMetrics.start(Phase.MERGE)) {
+            timer.classes(contents.size());
+            merger = new ExecutionDataMerger(target);
+            for (final ExecutionData data : contents) {
+                merger.visitClassExecution(data);
             }
         }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format("Merged %d classes, %d of them new", contents.size(), merger.getNewClassCount()));
+        }
         return target;
     }
 
@@ -306,7 +726,12 @@ public class JacocoReportExtension implements BeforeTestExecutionCallback, After
      * @return merged session info
      */
     public SessionInfoStore merge(final SessionInfoStore targetSessionInfoStore, final SessionInfoStore other) {
-        targetSessionInfoStore.getInfos().addAll(other.getInfos());
+        final CoverageMetrics.Timer timer = CoverageMetrics.start(Phase.MERGE);
+        try {
+            targetSessionInfoStore.getInfos().addAll(other.getInfos());
+        } finally {
+            timer.close();
+        }
         return targetSessionInfoStore;
     }
 }
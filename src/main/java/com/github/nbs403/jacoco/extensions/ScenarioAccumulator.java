@@ -0,0 +1,150 @@
+package com.github.nbs403.jacoco.extensions;
+
+import com.github.nbs403.jacoco.data.ExecFiles;
+import com.github.nbs403.jacoco.data.ExecutionDataMerger;
+import org.apache.log4j.Logger;
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.IExecutionDataVisitor;
+import org.jacoco.core.data.ISessionInfoVisitor;
+import org.jacoco.core.data.SessionInfo;
+import org.jacoco.core.data.SessionInfoStore;
+import org.junit.jupiter.api.extension.ExtensionContext;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Live execution data of a scenario, kept in the root extension context store for the whole test plan.
+ * Every test of the scenario is merged in memory, merged.exec is only written every checkpointInterval tests and
+ * when the store is closed at the end of the test plan.
+ * A streamed dump is merged class by class as a visitor, then completed with {@link #completeTest()}.
+ * New coverage is tracked between reports, so a report can be skipped when no test added a covered probe since the
+ * previous one, see {@link #takeNewCoverage()}.
+ */
+class ScenarioAccumulator implements ExtensionContext.Store.CloseableResource, ISessionInfoVisitor,
+                                     IExecutionDataVisitor {
+
+    private static final Logger LOG = Logger.getLogger(String.valueOf(ScenarioAccumulator.class));
+
+    private final File mergedExecFile;
+    private final int checkpointInterval;
+    private final ExecutionDataStore executionDataStore = new ExecutionDataStore();
+    private final SessionInfoStore sessionInfoStore = new SessionInfoStore();
+    private final ExecutionDataMerger merger;
+    private int testsSinceCheckpoint;
+    private boolean newCoverage = true;
+
+    /**
+     * @param mergedExecFile     - merged.exec of the scenario, loaded if it exists from a previous run
+     * @param checkpointInterval - number of tests between writes of merged.exec, 0 to write only when closed
+     * @throws IOException if an existing merged.exec cannot be read
+     */
+    ScenarioAccumulator(final File mergedExecFile, final int checkpointInterval) throws IOException {
+        this.mergedExecFile = mergedExecFile;
+        this.checkpointInterval = checkpointInterval;
+        if (mergedExecFile.exists()) {
+            ExecFiles.read(mergedExecFile, sessionInfoStore, executionDataStore);
+        }
+        merger = new ExecutionDataMerger(executionDataStore);
+    }
+
+    /**
+     * Merges a test's execution data and session info into the scenario
+     *
+     * @param testExecutionData - execution data dumped for the test
+     * @param testSessionInfo   - session info dumped for the test
+     * @throws IOException if a checkpoint is due and merged.exec cannot be written
+     */
+    synchronized void add(final ExecutionDataStore testExecutionData, final SessionInfoStore testSessionInfo)
+            throws IOException {
+        merger.merge(testExecutionData);
+        testSessionInfo.accept(sessionInfoStore);
+        completeTest();
+    }
+
+    /**
+     * @param testExecutionData - execution data dumped for a test
+     * @return true if the scenario already covers every probe the test hit, merging it would change nothing
+     */
+    synchronized boolean covers(final ExecutionDataStore testExecutionData) {
+        return merger.covers(testExecutionData);
+    }
+
+    /**
+     * Reports whether probes were covered for the first time since the last call, and starts tracking anew. The first
+     * call always reports new coverage, the scenario has not been reported yet in this test plan
+     *
+     * @return true if the scenario coverage changed since the last call
+     */
+    synchronized boolean takeNewCoverage() {
+        final boolean changed = newCoverage || merger.getNewlyCoveredProbeCount() > 0
+                || merger.getNewClassCount() > 0;
+        newCoverage = false;
+        merger.resetCounters();
+        return changed;
+    }
+
+    /**
+     * Merges a class of a test's dump into the scenario while the dump is streamed
+     *
+     * @param data - execution data of the class
+     */
+    @Override
+    public synchronized void visitClassExecution(final ExecutionData data) {
+        merger.visitClassExecution(data);
+    }
+
+    /**
+     * Adds a session info of a test's dump to the scenario while the dump is streamed
+     *
+     * @param info - session info of the dump
+     */
+    @Override
+    public synchronized void visitSessionInfo(final SessionInfo info) {
+        sessionInfoStore.visitSessionInfo(info);
+    }
+
+    /**
+     * Counts a test whose data was merged, writing merged.exec if a checkpoint is due
+     *
+     * @throws IOException if a checkpoint is due and merged.exec cannot be written
+     */
+    synchronized void completeTest() throws IOException {
+        testsSinceCheckpoint++;
+        if (checkpointInterval > 0 && testsSinceCheckpoint >= checkpointInterval) {
+            checkpoint();
+        }
+    }
+
+    /**
+     * Atomically replaces merged.exec with the current scenario data
+     *
+     * @throws IOException if merged.exec cannot be written
+     */
+    synchronized void checkpoint() throws IOException {
+        ExecFiles.writeAtomically(mergedExecFile, sessionInfoStore, executionDataStore);
+        testsSinceCheckpoint = 0;
+    }
+
+    ExecutionDataStore getExecutionDataStore() {
+        return executionDataStore;
+    }
+
+    SessionInfoStore getSessionInfoStore() {
+        return sessionInfoStore;
+    }
+
+    /**
+     * Called by JUnit at the end of the test plan, writes data merged since the last checkpoint
+     *
+     * @throws IOException if merged.exec cannot be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (testsSinceCheckpoint > 0) {
+            LOG.debug(String.format("Writing scenario execution data to %s", mergedExecFile));
+            checkpoint();
+        }
+    }
+}
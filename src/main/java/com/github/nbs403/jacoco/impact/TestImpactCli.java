@@ -0,0 +1,102 @@
+package com.github.nbs403.jacoco.impact;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Command line test selection from a test impact index.
+ * Prints every test that executed the changed classes or methods given as arguments, or one per line on standard
+ * input with "-". Changed elements no test executed are listed on standard error.
+ * --minimal prints a smaller set of tests still executing every change, see {@link TestImpactIndex#getMinimalTests},
+ * which leaves out tests exercising a change in other ways. --scenarios prints the affected scenarios.
+ * <pre>
+ * java -cp ... com.github.nbs403.jacoco.impact.TestImpactCli [--index file] [--minimal|--scenarios] changed...
+ * </pre>
+ */
+public final class TestImpactCli {
+
+    static final String DEFAULT_INDEX = "build/coveragereport/test-impact.idx";
+    private static final String USAGE = "Usage: TestImpactCli [--index <file>] [--minimal|--scenarios] "
+            + "<com.acme.Service | com.acme.Service#method | ->...";
+
+    private TestImpactCli() {
+    }
+
+    public static void main(final String[] args) throws IOException {
+        System.exit(run(args, new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)),
+                        System.out, System.err));
+    }
+
+    /**
+     * Runs the selection
+     *
+     * @param args  - command line arguments
+     * @param input - standard input, read when an argument is "-"
+     * @param out   - receives the selected tests or scenarios, one per line
+     * @param err   - receives usage and uncovered changes
+     * @return exit code, 0 on success
+     * @throws IOException if the index or the input cannot be read
+     */
+    static int run(final String[] args, final BufferedReader input, final PrintStream out, final PrintStream err)
+            throws IOException {
+        File indexFile = new File(DEFAULT_INDEX);
+        boolean minimal = false;
+        boolean scenarios = false;
+        final List<String> changed = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--index":
+                    if (++i == args.length) {
+                        err.println(USAGE);
+                        return 2;
+                    }
+                    indexFile = new File(args[i]);
+                    break;
+                case "--minimal":
+                    minimal = true;
+                    break;
+                case "--scenarios":
+                    scenarios = true;
+                    break;
+                case "-":
+                    readLines(input, changed);
+                    break;
+                default:
+                    if (args[i].startsWith("--")) {
+                        err.println(USAGE);
+                        return 2;
+                    }
+                    changed.add(args[i]);
+            }
+        }
+        if (!indexFile.exists()) {
+            err.println("Test impact index not found: " + indexFile);
+            return 1;
+        }
+        final TestImpactIndex index = TestImpactIndex.load(indexFile);
+        final Collection<String> selected = scenarios ? index.getAffectedScenarios(changed)
+                                                      : minimal ? index.getMinimalTests(changed)
+                                                                : index.getAffectedTests(changed);
+        selected.forEach(out::println);
+        for (final String uncovered : index.getUncovered(changed)) {
+            err.println("Not executed by any test: " + uncovered);
+        }
+        return 0;
+    }
+
+    private static void readLines(final BufferedReader input, final List<String> changed) throws IOException {
+        String line;
+        while ((line = input.readLine()) != null) {
+            if (!line.trim().isEmpty()) {
+                changed.add(line.trim());
+            }
+        }
+    }
+}
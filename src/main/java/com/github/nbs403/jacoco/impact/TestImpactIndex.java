@@ -0,0 +1,387 @@
+package com.github.nbs403.jacoco.impact;
+
+import com.github.nbs403.jacoco.analysis.MethodProbeMap;
+import org.apache.log4j.Logger;
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Inverted index from classes and methods to the tests, and their scenarios, that executed them.
+ * Tests are identified as "fully.qualified.TestClass#testMethod". Classes are kept by their VM name and can be
+ * queried either as "com.acme.Service" or "com/acme/Service". A query on a class also matches its nested classes, a
+ * query "com.acme.Service#save" matches every overload of the method.
+ * The index of the current run is merged into the index file at the end of the test plan: the tests of the run
+ * replace their previous entries, tests that did not run keep theirs.
+ */
+public final class TestImpactIndex {
+
+    private static final Logger LOG = Logger.getLogger(String.valueOf(TestImpactIndex.class));
+    private static final Map<File, TestImpactIndex> INDEXES = new HashMap<>();
+    private static final String HEADER = "# jacoco test impact index v1";
+    private static final String TEST_LINE = "T";
+    private static final String CLASS_LINE = "C";
+    private static final String METHOD_LINE = "M";
+    private static final String SEPARATOR = "\t";
+    private static final String METHOD_SEPARATOR = "#";
+
+    private final List<String> tests = new ArrayList<>();
+    private final List<String> scenarios = new ArrayList<>();
+    private final Map<String, Integer> testIndexes = new HashMap<>();
+    private final Map<String, BitSet> classTests = new TreeMap<>();
+    private final Map<String, Map<String, BitSet>> methodTests = new TreeMap<>();
+
+    /**
+     * Returns the index collecting the tests of this run for the given index file, creating it on first use
+     *
+     * @param indexFile - index file the run is merged into by {@link #saveAll()}
+     * @return the index shared by all tests of this JVM
+     */
+    public static synchronized TestImpactIndex forFile(final File indexFile) {
+        return INDEXES.computeIfAbsent(indexFile.getAbsoluteFile(), file -> new TestImpactIndex());
+    }
+
+    /**
+     * Merges the index of this run into every index file it was collected for
+     */
+    public static synchronized void saveAll() {
+        for (final Map.Entry<File, TestImpactIndex> index : INDEXES.entrySet()) {
+            try {
+                final TestImpactIndex persisted = load(index.getKey());
+                persisted.merge(index.getValue());
+                persisted.save(index.getKey());
+            } catch (final IOException e) {
+                LOG.warn("Failed saving test impact index " + index.getKey(), e);
+            }
+        }
+        INDEXES.clear();
+    }
+
+    /**
+     * Loads an index file
+     *
+     * @param indexFile - index file
+     * @return loaded index, empty if the file does not exist
+     * @throws IOException if the file cannot be read or is not an index file
+     */
+    public static TestImpactIndex load(final File indexFile) throws IOException {
+        final TestImpactIndex index = new TestImpactIndex();
+        if (!indexFile.exists()) {
+            return index;
+        }
+        try (final BufferedReader reader = Files.newBufferedReader(indexFile.toPath(), StandardCharsets.UTF_8)) {
+            if (!HEADER.equals(reader.readLine())) {
+                throw new IOException("Not a test impact index: " + indexFile);
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String[] fields = line.split(SEPARATOR, -1);
+                switch (fields[0]) {
+                    case TEST_LINE:
+                        index.testIndex(fields[1], fields[2]);
+                        break;
+                    case CLASS_LINE:
+                        index.classTests.put(fields[1], parseBits(fields[2]));
+                        break;
+                    case METHOD_LINE:
+                        index.methodTests.computeIfAbsent(fields[1], key -> new TreeMap<>())
+                                         .put(fields[2], parseBits(fields[3]));
+                        break;
+                    default:
+                        throw new IOException("Unexpected line in test impact index " + indexFile + ": " + line);
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Writes the index to a temporary file next to indexFile, then moves it over indexFile
+     *
+     * @param indexFile - index file
+     * @throws IOException if the file cannot be written
+     */
+    public synchronized void save(final File indexFile) throws IOException {
+        final File directory = indexFile.getAbsoluteFile().getParentFile();
+        Files.createDirectories(directory.toPath());
+        final File tempFile = File.createTempFile(indexFile.getName(), ".tmp", directory);
+        //Tests left without any coverage, e.g. replaced by a later run, are dropped and the others renumbered
+        final BitSet used = new BitSet();
+        classTests.values().forEach(used::or);
+        final int[] renumbered = new int[tests.size()];
+        try (final BufferedWriter writer = Files.newBufferedWriter(tempFile.toPath(), StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.newLine();
+            int next = 0;
+            for (int test = used.nextSetBit(0); test >= 0; test = used.nextSetBit(test + 1)) {
+                renumbered[test] = next++;
+                writer.write(TEST_LINE + SEPARATOR + tests.get(test) + SEPARATOR + scenarios.get(test));
+                writer.newLine();
+            }
+            for (final Map.Entry<String, BitSet> classEntry : classTests.entrySet()) {
+                if (classEntry.getValue().isEmpty()) {
+                    continue;
+                }
+                writer.write(CLASS_LINE + SEPARATOR + classEntry.getKey() + SEPARATOR
+                                     + formatBits(classEntry.getValue(), renumbered));
+                writer.newLine();
+                for (final Map.Entry<String, BitSet> method
+                        : methodTests.getOrDefault(classEntry.getKey(), new TreeMap<>()).entrySet()) {
+                    if (method.getValue().isEmpty()) {
+                        continue;
+                    }
+                    writer.write(METHOD_LINE + SEPARATOR + classEntry.getKey() + SEPARATOR + method.getKey()
+                                         + SEPARATOR + formatBits(method.getValue(), renumbered));
+                    writer.newLine();
+                }
+            }
+        }
+        Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Records the classes and methods executed by a test
+     *
+     * @param test               - test identifier, "fully.qualified.TestClass#testMethod"
+     * @param scenario           - scenario of the test, blank if none
+     * @param executionDataStore - execution data of the test
+     * @param methodProbeMap     - resolves the executed methods of the classes
+     * @throws IOException if class files cannot be read
+     */
+    public void record(final String test, final String scenario, final ExecutionDataStore executionDataStore,
+                       final MethodProbeMap methodProbeMap) throws IOException {
+        final Map<String, List<String>> executed = new HashMap<>();
+        for (final ExecutionData data : executionDataStore.getContents()) {
+            if (data.hasHits()) {
+                executed.put(data.getName(), methodProbeMap.getExecutedMethods(data));
+            }
+        }
+        synchronized (this) {
+            final int index = testIndex(sanitize(test), sanitize(scenario));
+            for (final Map.Entry<String, List<String>> classEntry : executed.entrySet()) {
+                classTests.computeIfAbsent(classEntry.getKey(), key -> new BitSet()).set(index);
+                for (final String method : classEntry.getValue()) {
+                    methodTests.computeIfAbsent(classEntry.getKey(), key -> new TreeMap<>())
+                               .computeIfAbsent(method, key -> new BitSet()).set(index);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the tests of other, replacing the entries of tests already in this index
+     *
+     * @param other - index to merge
+     */
+    public synchronized void merge(final TestImpactIndex other) {
+        final BitSet replaced = new BitSet();
+        for (final String test : other.tests) {
+            final Integer index = testIndexes.get(test);
+            if (index != null) {
+                replaced.set(index);
+            }
+        }
+        classTests.values().forEach(bits -> bits.andNot(replaced));
+        methodTests.values().forEach(methods -> methods.values().forEach(bits -> bits.andNot(replaced)));
+        final int[] indexes = new int[other.tests.size()];
+        for (int test = 0; test < indexes.length; test++) {
+            indexes[test] = testIndex(other.tests.get(test), other.scenarios.get(test));
+        }
+        for (final Map.Entry<String, BitSet> classEntry : other.classTests.entrySet()) {
+            classTests.computeIfAbsent(classEntry.getKey(), key -> new BitSet())
+                      .or(remap(classEntry.getValue(), indexes));
+        }
+        for (final Map.Entry<String, Map<String, BitSet>> classEntry : other.methodTests.entrySet()) {
+            final Map<String, BitSet> methods = methodTests.computeIfAbsent(classEntry.getKey(),
+                                                                             key -> new TreeMap<>());
+            for (final Map.Entry<String, BitSet> method : classEntry.getValue().entrySet()) {
+                methods.computeIfAbsent(method.getKey(), key -> new BitSet()).or(remap(method.getValue(), indexes));
+            }
+        }
+    }
+
+    /**
+     * @return identifiers of all tests with coverage in the index
+     */
+    public synchronized Set<String> getTests() {
+        final BitSet used = new BitSet();
+        classTests.values().forEach(used::or);
+        return names(used, tests);
+    }
+
+    /**
+     * Lists every test that executed any of the changed classes or methods
+     *
+     * @param changed - changed classes, "com.acme.Service", or methods, "com.acme.Service#save"
+     * @return identifiers of the affected tests
+     */
+    public synchronized Set<String> getAffectedTests(final Collection<String> changed) {
+        final BitSet affected = new BitSet();
+        for (final String element : changed) {
+            affected.or(testsOf(element));
+        }
+        return names(affected, tests);
+    }
+
+    /**
+     * Lists the scenarios of every test that executed any of the changed classes or methods
+     *
+     * @param changed - changed classes, "com.acme.Service", or methods, "com.acme.Service#save"
+     * @return names of the affected scenarios
+     */
+    public synchronized Set<String> getAffectedScenarios(final Collection<String> changed) {
+        final Set<String> affected = new LinkedHashSet<>();
+        for (final String test : getAffectedTests(changed)) {
+            final String scenario = scenarios.get(testIndexes.get(test));
+            if (!scenario.isEmpty()) {
+                affected.add(scenario);
+            }
+        }
+        return affected;
+    }
+
+    /**
+     * Selects a minimal set of tests which together execute every changed class or method executed by any test.
+     * The selection is greedy: the test executing the most changed elements not yet executed is picked first
+     *
+     * @param changed - changed classes, "com.acme.Service", or methods, "com.acme.Service#save"
+     * @return identifiers of the selected tests, in selection order
+     */
+    public synchronized Set<String> getMinimalTests(final Collection<String> changed) {
+        final List<BitSet> remaining = new ArrayList<>();
+        for (final String element : changed) {
+            final BitSet covering = testsOf(element);
+            if (!covering.isEmpty()) {
+                remaining.add(covering);
+            }
+        }
+        final Set<String> selected = new LinkedHashSet<>();
+        while (!remaining.isEmpty()) {
+            final int[] counts = new int[tests.size()];
+            int best = -1;
+            for (final BitSet covering : remaining) {
+                for (int test = covering.nextSetBit(0); test >= 0; test = covering.nextSetBit(test + 1)) {
+                    counts[test]++;
+                    if (best < 0 || counts[test] > counts[best] || counts[test] == counts[best] && test < best) {
+                        best = test;
+                    }
+                }
+            }
+            final int pick = best;
+            selected.add(tests.get(pick));
+            remaining.removeIf(covering -> covering.get(pick));
+        }
+        return selected;
+    }
+
+    /**
+     * Lists the changed classes or methods that no test executed
+     *
+     * @param changed - changed classes, "com.acme.Service", or methods, "com.acme.Service#save"
+     * @return changed elements no test covers
+     */
+    public synchronized Set<String> getUncovered(final Collection<String> changed) {
+        final Set<String> uncovered = new LinkedHashSet<>();
+        for (final String element : changed) {
+            if (testsOf(element).isEmpty()) {
+                uncovered.add(element);
+            }
+        }
+        return uncovered;
+    }
+
+    private BitSet testsOf(final String element) {
+        final int separator = element.indexOf(METHOD_SEPARATOR);
+        final String className = (separator < 0 ? element : element.substring(0, separator)).trim().replace('.', '/');
+        final String method = separator < 0 ? null : element.substring(separator + 1).trim();
+        final BitSet covering = new BitSet();
+        for (final Map.Entry<String, BitSet> classEntry : classTests.entrySet()) {
+            final String name = classEntry.getKey();
+            if (!name.equals(className) && !(method == null && name.startsWith(className + "$"))) {
+                continue;
+            }
+            if (method == null) {
+                covering.or(classEntry.getValue());
+                continue;
+            }
+            for (final Map.Entry<String, BitSet> methodEntry
+                    : methodTests.getOrDefault(name, new TreeMap<>()).entrySet()) {
+                final String key = methodEntry.getKey();
+                if (key.equals(method) || key.startsWith(method + "(")) {
+                    covering.or(methodEntry.getValue());
+                }
+            }
+        }
+        return covering;
+    }
+
+    private int testIndex(final String test, final String scenario) {
+        final Integer existing = testIndexes.get(test);
+        if (existing != null) {
+            scenarios.set(existing, scenario);
+            return existing;
+        }
+        final int index = tests.size();
+        tests.add(test);
+        scenarios.add(scenario);
+        testIndexes.put(test, index);
+        return index;
+    }
+
+    private static String sanitize(final String field) {
+        return field.replaceAll("[\\t\\r\\n]", " ");
+    }
+
+    private static BitSet remap(final BitSet bits, final int[] indexes) {
+        final BitSet remapped = new BitSet();
+        for (int bit = bits.nextSetBit(0); bit >= 0; bit = bits.nextSetBit(bit + 1)) {
+            remapped.set(indexes[bit]);
+        }
+        return remapped;
+    }
+
+    private static Set<String> names(final BitSet bits, final List<String> names) {
+        final Set<String> result = new LinkedHashSet<>();
+        for (int bit = bits.nextSetBit(0); bit >= 0; bit = bits.nextSetBit(bit + 1)) {
+            result.add(names.get(bit));
+        }
+        return result;
+    }
+
+    private static BitSet parseBits(final String field) {
+        final BitSet bits = new BitSet();
+        if (!field.isEmpty()) {
+            for (final String bit : field.split(",")) {
+                bits.set(Integer.parseInt(bit));
+            }
+        }
+        return bits;
+    }
+
+    private static String formatBits(final BitSet bits, final int[] renumbered) {
+        final StringBuilder field = new StringBuilder();
+        for (int bit = bits.nextSetBit(0); bit >= 0; bit = bits.nextSetBit(bit + 1)) {
+            if (field.length() > 0) {
+                field.append(',');
+            }
+            field.append(renumbered[bit]);
+        }
+        return field.toString();
+    }
+}
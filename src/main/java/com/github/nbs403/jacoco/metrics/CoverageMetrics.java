@@ -0,0 +1,351 @@
+package com.github.nbs403.jacoco.metrics;
+
+import org.apache.log4j.Logger;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Per phase timings, byte, class and allocation counts of coverage collection and reporting.
+ * Every phase is emitted as a flight recorder {@link PhaseEvent}. When enabled with a summary file, phases are also
+ * aggregated per scenario - tests without scenario under "" - and for the whole run, and written as JSON with
+ * percentiles at the end of the test plan.
+ * Phases are attributed to the scenario and test of the calling thread's {@link Context}, and aggregated by every
+ * thread on its own, the summary collects the aggregates of all threads.
+ */
+public final class CoverageMetrics {
+
+    private static final Logger LOG = Logger.getLogger(String.valueOf(CoverageMetrics.class));
+    private static final ThreadLocal<Context> CONTEXT = ThreadLocal.withInitial(() -> Context.NONE);
+    private static final com.sun.management.ThreadMXBean THREADS = allocationCounter();
+    private static final String RUN = "run";
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private static final Queue<ThreadStats> THREAD_STATS = new ConcurrentLinkedQueue<>();
+    private static final ThreadLocal<ThreadStats> STATS = ThreadLocal.withInitial(ThreadStats::register);
+    private static volatile File summaryFile;
+
+    private CoverageMetrics() {
+    }
+
+    /**
+     * Aggregates phases for the JSON summary, written by {@link #writeSummary()}
+     *
+     * @param file - summary file, null to stop aggregating
+     */
+    public static void enableSummary(final File file) {
+        summaryFile = file;
+    }
+
+    /**
+     * Starts timing a phase on the calling thread
+     *
+     * @param phase - timed phase
+     * @return timer to close when the phase ends
+     */
+    public static Timer start(final Phase phase) {
+        return new Timer(phase, CONTEXT.get());
+    }
+
+    /**
+     * @return scenario and test of the calling thread
+     */
+    public static Context currentContext() {
+        return CONTEXT.get();
+    }
+
+    /**
+     * Writes the summary of the phases aggregated since the last summary, if enabled, and resets the aggregates
+     */
+    public static void writeSummary() {
+        final File file = summaryFile;
+        final Map<String, Map<Phase, Stats>> collected = new TreeMap<>();
+        for (final ThreadStats threadStats : THREAD_STATS) {
+            for (final Map.Entry<String, Map<Phase, Stats>> scenario : threadStats.take().entrySet()) {
+                final Map<Phase, Stats> phases = collected.computeIfAbsent(scenario.getKey(),
+                                                                           key -> new EnumMap<>(Phase.class));
+                for (final Map.Entry<Phase, Stats> phase : scenario.getValue().entrySet()) {
+                    phases.computeIfAbsent(phase.getKey(), key -> new Stats()).addAll(phase.getValue());
+                }
+            }
+        }
+        //Threads that ended were just collected for the last time
+        THREAD_STATS.removeIf(threadStats -> !threadStats.thread.isAlive());
+        if (file == null || collected.isEmpty()) {
+            return;
+        }
+        try {
+            write(file, collected);
+        } catch (final IOException e) {
+            LOG.warn("Failed writing coverage metrics summary " + file, e);
+        }
+    }
+
+    private static void record(final Timer timer, final long nanos, final long allocated) {
+        if (summaryFile == null) {
+            return;
+        }
+        STATS.get().add(timer, nanos, allocated);
+    }
+
+    private static void write(final File file, final Map<String, Map<Phase, Stats>> collected) throws IOException {
+        final Map<Phase, Stats> run = new EnumMap<>(Phase.class);
+        for (final Map<Phase, Stats> phases : collected.values()) {
+            for (final Map.Entry<Phase, Stats> phase : phases.entrySet()) {
+                run.computeIfAbsent(phase.getKey(), key -> new Stats()).addAll(phase.getValue());
+            }
+        }
+        final File directory = file.getAbsoluteFile().getParentFile();
+        Files.createDirectories(directory.toPath());
+        final File tempFile = File.createTempFile(file.getName(), ".tmp", directory);
+        try (final BufferedWriter writer = Files.newBufferedWriter(tempFile.toPath(), StandardCharsets.UTF_8)) {
+            writer.write("{\"" + RUN + "\":");
+            writePhases(writer, run);
+            writer.write(",\"scenarios\":{");
+            boolean first = true;
+            for (final Map.Entry<String, Map<Phase, Stats>> scenario : collected.entrySet()) {
+                writer.write(first ? "" : ",");
+                first = false;
+                writer.write(quote(scenario.getKey()) + ":");
+                writePhases(writer, scenario.getValue());
+            }
+            writer.write("}}");
+            writer.newLine();
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void writePhases(final BufferedWriter writer, final Map<Phase, Stats> phases) throws IOException {
+        writer.write('{');
+        boolean first = true;
+        for (final Map.Entry<Phase, Stats> phase : phases.entrySet()) {
+            final Stats stats = phase.getValue();
+            final long[] sorted = Arrays.copyOf(stats.nanos, stats.count);
+            Arrays.sort(sorted);
+            writer.write(first ? "" : ",");
+            first = false;
+            writer.write(String.format(Locale.ROOT,
+                    "\"%s\":{\"count\":%d,\"totalMs\":%.3f,\"p50Ms\":%.3f,\"p90Ms\":%.3f,\"p99Ms\":%.3f,"
+                            + "\"maxMs\":%.3f,\"bytes\":%d,\"classes\":%d,\"allocatedBytes\":%d}",
+                    phase.getKey(), stats.count, stats.totalNanos / NANOS_PER_MILLI, percentile(sorted, 50),
+                    percentile(sorted, 90), percentile(sorted, 99), sorted[sorted.length - 1] / NANOS_PER_MILLI,
+                    stats.bytes, stats.classes, stats.allocated));
+        }
+        writer.write('}');
+    }
+
+    /**
+     * Nearest rank percentile, in milliseconds
+     */
+    private static double percentile(final long[] sorted, final int percentile) {
+        final int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)] / NANOS_PER_MILLI;
+    }
+
+    private static String quote(final String value) {
+        final StringBuilder quoted = new StringBuilder("\"");
+        for (final char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            final com.sun.management.ThreadMXBean hotspotThreads = (com.sun.management.ThreadMXBean) threads;
+            if (hotspotThreads.isThreadAllocatedMemorySupported() && hotspotThreads.isThreadAllocatedMemoryEnabled()) {
+                return hotspotThreads;
+            }
+        }
+        return null;
+    }
+
+    private static long allocatedBytes() {
+        return THREADS == null ? 0L : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Scenario and test phases are attributed to
+     */
+    public static final class Context {
+        private static final Context NONE = new Context("", "");
+
+        private final String scenario;
+        private final String test;
+
+        private Context(final String scenario, final String test) {
+            this.scenario = scenario;
+            this.test = test;
+        }
+
+        /**
+         * @param scenario - scenario name, blank if none
+         * @param test     - test name
+         * @return context of a test
+         */
+        public static Context of(final String scenario, final String test) {
+            return new Context(scenario, test);
+        }
+
+        /**
+         * Attributes the phases of the calling thread to this context until the scope is closed
+         *
+         * @return scope restoring the previous context of the thread when closed
+         */
+        public Scope enter() {
+            final Context previous = CONTEXT.get();
+            CONTEXT.set(this);
+            return () -> CONTEXT.set(previous);
+        }
+    }
+
+    /**
+     * Context scope, see {@link Context#enter()}
+     */
+    @FunctionalInterface
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * Running phase, emits its event and aggregates it on close
+     */
+    public static final class Timer implements AutoCloseable {
+        private final Phase phase;
+        private final Context context;
+        private final PhaseEvent event = new PhaseEvent();
+        private final long startNanos;
+        private final long startAllocated;
+        private int classes;
+        private long bytes;
+
+        private Timer(final Phase phase, final Context context) {
+            this.phase = phase;
+            this.context = context;
+            event.begin();
+            startAllocated = allocatedBytes();
+            startNanos = System.nanoTime();
+        }
+
+        /**
+         * @return true if the phase is recorded by flight recorder or aggregated for the summary, counts that are
+         * costly to compute can be skipped otherwise
+         */
+        public boolean isRecorded() {
+            return summaryFile != null || event.isEnabled();
+        }
+
+        /**
+         * @param classCount - number of classes handled by the phase
+         * @return this timer
+         */
+        public Timer classes(final int classCount) {
+            classes = classCount;
+            return this;
+        }
+
+        /**
+         * @param byteCount - number of bytes transferred or written by the phase
+         * @return this timer
+         */
+        public Timer bytes(final long byteCount) {
+            bytes = byteCount;
+            return this;
+        }
+
+        @Override
+        public void close() {
+            final long nanos = System.nanoTime() - startNanos;
+            final long allocated = allocatedBytes() - startAllocated;
+            event.end();
+            if (event.shouldCommit()) {
+                event.phase = phase.name();
+                event.scenario = context.scenario;
+                event.test = context.test;
+                event.classes = classes;
+                event.bytes = bytes;
+                event.allocated = allocated;
+                event.commit();
+            }
+            record(this, nanos, allocated);
+        }
+    }
+
+    /**
+     * Phases aggregated by one thread. Only its thread adds to them, the lock is only contended while the summary takes
+     * them
+     */
+    private static final class ThreadStats {
+        private final Thread thread = Thread.currentThread();
+        private Map<String, Map<Phase, Stats>> scenarios = new TreeMap<>();
+
+        private static ThreadStats register() {
+            final ThreadStats threadStats = new ThreadStats();
+            THREAD_STATS.add(threadStats);
+            return threadStats;
+        }
+
+        private synchronized void add(final Timer timer, final long nanos, final long allocated) {
+            scenarios.computeIfAbsent(timer.context.scenario, key -> new EnumMap<>(Phase.class))
+                     .computeIfAbsent(timer.phase, key -> new Stats()).add(nanos, timer.bytes, timer.classes,
+                                                                          allocated);
+        }
+
+        private synchronized Map<String, Map<Phase, Stats>> take() {
+            final Map<String, Map<Phase, Stats>> taken = scenarios;
+            scenarios = new TreeMap<>();
+            return taken;
+        }
+    }
+
+    private static final class Stats {
+        private long[] nanos = new long[16];
+        private int count;
+        private long totalNanos;
+        private long bytes;
+        private long classes;
+        private long allocated;
+
+        private void add(final long duration, final long byteCount, final long classCount,
+                         final long allocatedBytes) {
+            if (count == nanos.length) {
+                nanos = Arrays.copyOf(nanos, count * 2);
+            }
+            nanos[count++] = duration;
+            totalNanos += duration;
+            bytes += byteCount;
+            classes += classCount;
+            allocated += allocatedBytes;
+        }
+
+        private void addAll(final Stats other) {
+            for (int i = 0; i < other.count; i++) {
+                add(other.nanos[i], 0L, 0L, 0L);
+            }
+            bytes += other.bytes;
+            classes += other.classes;
+            allocated += other.allocated;
+        }
+    }
+}
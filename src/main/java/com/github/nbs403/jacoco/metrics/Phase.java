@@ -0,0 +1,47 @@
+package com.github.nbs403.jacoco.metrics;
+
+/**
+ * Timed phases of coverage collection and reporting
+ */
+public enum Phase {
+    /**
+     * Whole beforeTestExecution callback
+     */
+    BEFORE_TEST,
+    /**
+     * Waiting for exclusive capture of the agents
+     */
+    CAPTURE_WAIT,
+    /**
+     * Agent reset round trip
+     */
+    AGENT_RESET,
+    /**
+     * Agent dump round trip without reset before a test, in differential capture mode
+     */
+    AGENT_SNAPSHOT,
+    /**
+     * Whole afterTestExecution callback
+     */
+    AFTER_TEST,
+    /**
+     * Agent dump round trip, bytes are the size of the dumped execution data
+     */
+    AGENT_DUMP,
+    /**
+     * Structure analysis of the classes with the execution data
+     */
+    ANALYZE,
+    /**
+     * Merge of execution data or session infos
+     */
+    MERGE,
+    /**
+     * Write of execution data, bytes are the size written
+     */
+    SAVE,
+    /**
+     * Rendering of a report in all its formats
+     */
+    REPORT
+}
@@ -0,0 +1,42 @@
+package com.github.nbs403.jacoco.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of one coverage phase, see {@link Phase}.
+ * Enabled by default like all custom events, so any recording - e.g. -XX:StartFlightRecording - holds them.
+ */
+@Name("com.github.nbs403.jacoco.Phase")
+@Label("Coverage Phase")
+@Category({"Jacoco", "Coverage"})
+@Description("Duration, size and allocation of a remote coverage collection or reporting phase")
+@StackTrace(false)
+class PhaseEvent extends Event {
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Scenario")
+    String scenario;
+
+    @Label("Test")
+    String test;
+
+    @Label("Classes")
+    int classes;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    @Label("Allocated")
+    @Description("Bytes allocated by the thread during the phase")
+    @DataAmount
+    long allocated;
+}
@@ -0,0 +1,87 @@
+package com.github.nbs403.jacoco.report;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Content-addressed reports of a report directory: a report is written once per probe content hash, see
+ * {@link com.github.nbs403.jacoco.data.ProbeHash}, under content/&lt;hash&gt;, and every test that hit the same probes
+ * links to it from its own directory.
+ * A link is a report.ref file holding the path of the shared report relative to the report directory, and an
+ * index.html redirecting to the shared HTML report.
+ * Reports are shared within a test plan only: a hash is claimed, and its report written, by the first test of this
+ * JVM that hits it, so a report left by a previous run is never reused with stale classes or sources.
+ */
+public final class ContentReports {
+
+    private static final String CONTENTFOLDER = "content";
+    private static final String REFERENCEFILENAME = "report.ref";
+    private static final String INDEXFILENAME = "index.html";
+    private static final Map<File, ContentReports> SHARED = new ConcurrentHashMap<>();
+
+    private final File reportDirectory;
+    private final File contentDirectory;
+    private final Set<String> claimed = ConcurrentHashMap.newKeySet();
+
+    private ContentReports(final File reportDirectory) {
+        this.reportDirectory = reportDirectory;
+        this.contentDirectory = new File(reportDirectory, CONTENTFOLDER);
+    }
+
+    /**
+     * Returns the content-addressed reports shared by this JVM for the given report directory, creating them on
+     * first use
+     *
+     * @param reportDirectory - base report directory, content reports are written in its content folder
+     * @return the shared content reports of the directory
+     */
+    public static ContentReports forDirectory(final File reportDirectory) {
+        return SHARED.computeIfAbsent(reportDirectory.getAbsoluteFile(), ContentReports::new);
+    }
+
+    /**
+     * @param hash - probe content hash
+     * @return directory of the shared report of that hash
+     */
+    public File getDirectory(final String hash) {
+        return new File(contentDirectory, hash);
+    }
+
+    /**
+     * Claims the report of a hash, the caller that gets true writes it
+     *
+     * @param hash - probe content hash
+     * @return true the first time the hash is claimed in this JVM
+     */
+    public boolean claim(final String hash) {
+        return claimed.add(hash);
+    }
+
+    /**
+     * Points an entry directory - e.g. the report directory of a test - at the shared report of a hash
+     *
+     * @param entryDirectory - directory of the entry
+     * @param hash           - probe content hash
+     * @throws IOException if the link files cannot be written
+     */
+    public void link(final File entryDirectory, final String hash) throws IOException {
+        final Path entry = entryDirectory.getAbsoluteFile().toPath();
+        final Path content = getDirectory(hash).getAbsoluteFile().toPath();
+        Files.createDirectories(entry);
+        final String reference = reportDirectory.getAbsoluteFile().toPath().relativize(content).toString()
+                                                .replace(File.separatorChar, '/');
+        Files.write(entry.resolve(REFERENCEFILENAME), (reference + "\n").getBytes(StandardCharsets.UTF_8));
+        final String target = entry.relativize(content.resolve(INDEXFILENAME)).toString()
+                                   .replace(File.separatorChar, '/');
+        final String redirect = "<!DOCTYPE html>\n<html><head><meta charset=\"UTF-8\">"
+                + "<meta http-equiv=\"refresh\" content=\"0; url=" + target + "\"></head>"
+                + "<body><a href=\"" + target + "\">" + target + "</a></body></html>\n";
+        Files.write(entry.resolve(INDEXFILENAME), redirect.getBytes(StandardCharsets.UTF_8));
+    }
+}
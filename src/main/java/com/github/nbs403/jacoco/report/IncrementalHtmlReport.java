@@ -0,0 +1,310 @@
+package com.github.nbs403.jacoco.report;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.log4j.Logger;
+import org.jacoco.core.analysis.IBundleCoverage;
+import org.jacoco.core.analysis.IClassCoverage;
+import org.jacoco.core.analysis.ICounter;
+import org.jacoco.core.analysis.ICoverageNode;
+import org.jacoco.core.analysis.ILine;
+import org.jacoco.core.analysis.IMethodCoverage;
+import org.jacoco.core.analysis.IPackageCoverage;
+import org.jacoco.core.analysis.ISourceFileCoverage;
+import org.jacoco.core.analysis.ISourceNode;
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.SessionInfo;
+import org.jacoco.core.data.SessionInfoStore;
+import org.jacoco.report.FileMultiReportOutput;
+import org.jacoco.report.IMultiReportOutput;
+import org.jacoco.report.IReportGroupVisitor;
+import org.jacoco.report.IReportVisitor;
+import org.jacoco.report.ISourceFileLocator;
+import org.jacoco.report.JavaNames;
+import org.jacoco.report.html.HTMLFormatter;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HTML report that only rewrites the pages whose coverage changed since the previous report in the same directory.
+ * A signature of the counters and line coverage of every class, source file and package is kept next to the report.
+ * Pages of unchanged classes, source files and packages are not written, unchanged source files are not read from
+ * disk, and the report and package indexes of changed packages are rewritten.
+ * Page names are derived from Jacoco's HTML layout, a page whose name is not recognized is always written.
+ */
+public final class IncrementalHtmlReport {
+
+    private static final Logger LOG = Logger.getLogger(String.valueOf(IncrementalHtmlReport.class));
+    private static final String SIGNATURES_FILE = "jacoco-incremental.sig";
+    private static final String RESOURCES_FOLDER = "jacoco-resources/";
+    private static final String PAGE_EXTENSION = ".html";
+    private static final String PACKAGE_KEY = "P:";
+    private static final String CLASS_KEY = "C:";
+    private static final String SOURCE_KEY = "S:";
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+    private final File reportDirectory;
+    private final Map<String, Long> previous;
+    private final Map<String, Long> current = new HashMap<>();
+    private final Map<String, String> pageKeys = new HashMap<>();
+    private final Map<String, String> folderKeys = new HashMap<>();
+    private int written;
+    private int skipped;
+
+    private IncrementalHtmlReport(final File reportDirectory) throws IOException {
+        this.reportDirectory = reportDirectory;
+        this.previous = readSignatures(new File(reportDirectory, SIGNATURES_FILE));
+    }
+
+    /**
+     * Renders an HTML report into reportDirectory, rewriting only pages whose coverage changed
+     *
+     * @param bundleCoverage     - coverage to report
+     * @param sessionInfoStore   - session infos store
+     * @param executionDataStore - execution data content
+     * @param reportDirectory    - directory of the report, usually holding the previous report
+     * @param sourceFileLocator  - source files locator
+     * @throws IOException if the report cannot be written
+     */
+    public static void render(final IBundleCoverage bundleCoverage, final SessionInfoStore sessionInfoStore,
+                              final ExecutionDataStore executionDataStore, final File reportDirectory,
+                              final ISourceFileLocator sourceFileLocator) throws IOException {
+        final IncrementalHtmlReport report = forBundle(bundleCoverage, reportDirectory);
+        final IReportVisitor visitor = report.createVisitor();
+        visitor.visitInfo(sessionInfoStore.getInfos(), executionDataStore.getContents());
+        visitor.visitBundle(bundleCoverage, report.createLocator(sourceFileLocator));
+        visitor.visitEnd();
+    }
+
+    /**
+     * Prepares the incremental report of a bundle, to be rendered along other formats with the visitor and source
+     * locator it creates
+     *
+     * @param bundleCoverage  - coverage to report
+     * @param reportDirectory - directory of the report, usually holding the previous report
+     * @return report comparing the bundle with the previous report
+     * @throws IOException if the signatures of the previous report cannot be read
+     */
+    public static IncrementalHtmlReport forBundle(final IBundleCoverage bundleCoverage, final File reportDirectory)
+            throws IOException {
+        final IncrementalHtmlReport report = new IncrementalHtmlReport(reportDirectory);
+        report.sign(bundleCoverage);
+        return report;
+    }
+
+    /**
+     * @return HTML visitor writing only changed pages, saving the signatures of this report on visitEnd
+     * @throws IOException if the visitor cannot be created
+     */
+    public IReportVisitor createVisitor() throws IOException {
+        final IReportVisitor html = new HTMLFormatter().createVisitor(new ChangedPagesOutput());
+        return new IReportVisitor() {
+            @Override
+            public void visitInfo(final List<SessionInfo> sessionInfos, final Collection<ExecutionData> executionData)
+                    throws IOException {
+                html.visitInfo(sessionInfos, executionData);
+            }
+
+            @Override
+            public void visitBundle(final IBundleCoverage bundle, final ISourceFileLocator locator)
+                    throws IOException {
+                html.visitBundle(bundle, locator);
+            }
+
+            @Override
+            public IReportGroupVisitor visitGroup(final String name) throws IOException {
+                return html.visitGroup(name);
+            }
+
+            @Override
+            public void visitEnd() throws IOException {
+                html.visitEnd();
+                writeSignatures();
+                LOG.debug(String.format("Report %s: %d pages written, %d unchanged pages skipped", reportDirectory,
+                                        written, skipped));
+            }
+        };
+    }
+
+    /**
+     * @param sourceFileLocator - source files locator
+     * @return locator not reading the sources of unchanged source files whose page is not rewritten
+     */
+    public ISourceFileLocator createLocator(final ISourceFileLocator sourceFileLocator) {
+        return new ChangedSourcesLocator(sourceFileLocator);
+    }
+
+    private void sign(final IBundleCoverage bundleCoverage) {
+        final JavaNames names = new JavaNames();
+        for (final IPackageCoverage packageCoverage : bundleCoverage.getPackages()) {
+            final String folder = names.getPackageName(packageCoverage.getName()) + "/";
+            final String packageKey = PACKAGE_KEY + packageCoverage.getName();
+            long packageSignature = counters(FNV_OFFSET, packageCoverage);
+            for (final IClassCoverage classCoverage : packageCoverage.getClasses()) {
+                final String key = CLASS_KEY + classCoverage.getName();
+                long signature = lines(counters(FNV_OFFSET, classCoverage), classCoverage);
+                for (final IMethodCoverage methodCoverage : classCoverage.getMethods()) {
+                    signature = mix(counters(mix(signature, methodCoverage.getName().hashCode()), methodCoverage),
+                                    methodCoverage.getDesc().hashCode());
+                }
+                current.put(key, signature);
+                packageSignature = mix(mix(packageSignature, key.hashCode()), signature);
+                final String vmName = classCoverage.getName();
+                pageKeys.put(folder + vmName.substring(vmName.lastIndexOf('/') + 1) + PAGE_EXTENSION, key);
+            }
+            for (final ISourceFileCoverage sourceCoverage : packageCoverage.getSourceFiles()) {
+                final String key = SOURCE_KEY + packageCoverage.getName() + "/" + sourceCoverage.getName();
+                final long signature = lines(counters(FNV_OFFSET, sourceCoverage), sourceCoverage);
+                current.put(key, signature);
+                packageSignature = mix(mix(packageSignature, key.hashCode()), signature);
+                pageKeys.put(folder + sourceCoverage.getName() + PAGE_EXTENSION, key);
+            }
+            current.put(packageKey, packageSignature);
+            folderKeys.put(folder, packageKey);
+        }
+    }
+
+    private boolean unchanged(final String key) {
+        final Long signature = previous.get(key);
+        return signature != null && signature.equals(current.get(key));
+    }
+
+    private boolean shouldWrite(final String path) {
+        if (path.startsWith(RESOURCES_FOLDER)) {
+            return !new File(reportDirectory, path).exists();
+        }
+        final int separator = path.indexOf('/');
+        if (separator < 0) {
+            //Report index and sessions page
+            return true;
+        }
+        final String packageKey = folderKeys.get(path.substring(0, separator + 1));
+        if (packageKey == null) {
+            return true;
+        }
+        if (unchanged(packageKey)) {
+            return !new File(reportDirectory, path).exists();
+        }
+        final String pageKey = pageKeys.get(path);
+        return pageKey == null || !unchanged(pageKey) || !new File(reportDirectory, path).exists();
+    }
+
+    private static long counters(final long hash, final ICoverageNode node) {
+        long result = hash;
+        for (final ICoverageNode.CounterEntity entity : ICoverageNode.CounterEntity.values()) {
+            final ICounter counter = node.getCounter(entity);
+            result = mix(mix(result, counter.getCoveredCount()), counter.getMissedCount());
+        }
+        return result;
+    }
+
+    private static long lines(final long hash, final ISourceNode node) {
+        long result = mix(mix(hash, node.getFirstLine()), node.getLastLine());
+        if (node.getFirstLine() == ISourceNode.UNKNOWN_LINE) {
+            return result;
+        }
+        for (int line = node.getFirstLine(); line <= node.getLastLine(); line++) {
+            final ILine coverage = node.getLine(line);
+            result = mix(mix(mix(result, coverage.getStatus()), coverage.getBranchCounter().getCoveredCount()),
+                         coverage.getBranchCounter().getMissedCount());
+        }
+        return result;
+    }
+
+    private static long mix(final long hash, final long value) {
+        return (hash ^ value) * FNV_PRIME;
+    }
+
+    private static Map<String, Long> readSignatures(final File file) throws IOException {
+        final Map<String, Long> signatures = new HashMap<>();
+        if (!file.exists()) {
+            return signatures;
+        }
+        try (final BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final int separator = line.lastIndexOf('\t');
+                if (separator > 0) {
+                    signatures.put(line.substring(0, separator),
+                                   Long.parseUnsignedLong(line.substring(separator + 1), 16));
+                }
+            }
+        }
+        return signatures;
+    }
+
+    private void writeSignatures() throws IOException {
+        final File file = new File(reportDirectory, SIGNATURES_FILE);
+        final File tempFile = new File(reportDirectory, SIGNATURES_FILE + ".tmp");
+        try (final BufferedWriter writer = Files.newBufferedWriter(tempFile.toPath(), StandardCharsets.UTF_8)) {
+            for (final Map.Entry<String, Long> signature : current.entrySet()) {
+                writer.write(signature.getKey());
+                writer.write('\t');
+                writer.write(Long.toHexString(signature.getValue()));
+                writer.newLine();
+            }
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Writes changed pages to the report directory and discards the others
+     */
+    private final class ChangedPagesOutput implements IMultiReportOutput {
+        private final IMultiReportOutput delegate = new FileMultiReportOutput(reportDirectory);
+
+        @Override
+        public OutputStream createFile(final String path) throws IOException {
+            if (shouldWrite(path)) {
+                written++;
+                return delegate.createFile(path);
+            }
+            skipped++;
+            return NullOutputStream.NULL_OUTPUT_STREAM;
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+
+    /**
+     * Serves empty content for unchanged source files whose page already exists, their page is not written anyway
+     */
+    private final class ChangedSourcesLocator implements ISourceFileLocator {
+        private final ISourceFileLocator delegate;
+
+        private ChangedSourcesLocator(final ISourceFileLocator delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Reader getSourceFile(final String packageName, final String fileName) throws IOException {
+            final String page = new JavaNames().getPackageName(packageName) + "/" + fileName + PAGE_EXTENSION;
+            if (unchanged(SOURCE_KEY + packageName + "/" + fileName) && !shouldWrite(page)) {
+                return new StringReader("");
+            }
+            return delegate.getSourceFile(packageName, fileName);
+        }
+
+        @Override
+        public int getTabWidth() {
+            return delegate.getTabWidth();
+        }
+    }
+}
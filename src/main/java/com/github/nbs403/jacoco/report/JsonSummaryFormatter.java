@@ -0,0 +1,146 @@
+package com.github.nbs403.jacoco.report;
+
+import org.jacoco.core.analysis.IBundleCoverage;
+import org.jacoco.core.analysis.ICounter;
+import org.jacoco.core.analysis.ICoverageNode;
+import org.jacoco.core.analysis.IPackageCoverage;
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.SessionInfo;
+import org.jacoco.report.IReportGroupVisitor;
+import org.jacoco.report.IReportVisitor;
+import org.jacoco.report.ISourceFileLocator;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Compact JSON report holding only counters: for every bundle its totals and the totals of each of its packages, e.g.
+ * <pre>
+ * {"sessions":1,"children":[{"bundle":"test","counters":{"INSTRUCTION":[12,30],...},"packages":[...]}]}
+ * </pre>
+ * where every counter is [covered, missed]. Groups are children {"group":"name","children":[...]}.
+ */
+final class JsonSummaryFormatter {
+
+    /**
+     * @param output - stream receiving the JSON document, closed on visitEnd
+     * @return visitor writing the summary
+     */
+    IReportVisitor createVisitor(final OutputStream output) {
+        return new SummaryVisitor(new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8)));
+    }
+
+    private static class GroupWriter implements IReportGroupVisitor {
+        final Writer writer;
+        private boolean empty = true;
+        private GroupWriter openGroup;
+
+        GroupWriter(final Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void visitBundle(final IBundleCoverage bundle, final ISourceFileLocator locator) throws IOException {
+            next();
+            writer.write("{\"bundle\":");
+            string(writer, bundle.getName());
+            writer.write(",\"counters\":");
+            counters(writer, bundle);
+            writer.write(",\"packages\":[");
+            boolean first = true;
+            for (final IPackageCoverage packageCoverage : bundle.getPackages()) {
+                writer.write(first ? "{\"name\":" : ",{\"name\":");
+                first = false;
+                string(writer, packageCoverage.getName());
+                writer.write(",\"counters\":");
+                counters(writer, packageCoverage);
+                writer.write('}');
+            }
+            writer.write("]}");
+        }
+
+        @Override
+        public IReportGroupVisitor visitGroup(final String name) throws IOException {
+            next();
+            writer.write("{\"group\":");
+            string(writer, name);
+            writer.write(",\"children\":[");
+            openGroup = new GroupWriter(writer);
+            return openGroup;
+        }
+
+        /**
+         * Closes the group opened last, Jacoco visits a group completely before its next sibling
+         */
+        void closeGroup() throws IOException {
+            if (openGroup != null) {
+                openGroup.closeGroup();
+                writer.write("]}");
+                openGroup = null;
+            }
+        }
+
+        private void next() throws IOException {
+            closeGroup();
+            if (!empty) {
+                writer.write(',');
+            }
+            empty = false;
+        }
+    }
+
+    private static final class SummaryVisitor extends GroupWriter implements IReportVisitor {
+
+        private SummaryVisitor(final Writer writer) {
+            super(writer);
+        }
+
+        @Override
+        public void visitInfo(final List<SessionInfo> sessionInfos, final Collection<ExecutionData> executionData)
+                throws IOException {
+            writer.write("{\"sessions\":" + sessionInfos.size() + ",\"children\":[");
+        }
+
+        @Override
+        public void visitEnd() throws IOException {
+            closeGroup();
+            writer.write("]}");
+            writer.close();
+        }
+    }
+
+    private static void counters(final Writer writer, final ICoverageNode node) throws IOException {
+        writer.write('{');
+        boolean first = true;
+        for (final ICoverageNode.CounterEntity entity : ICoverageNode.CounterEntity.values()) {
+            final ICounter counter = node.getCounter(entity);
+            writer.write(first ? "\"" : ",\"");
+            first = false;
+            writer.write(entity.name());
+            writer.write("\":[" + counter.getCoveredCount() + "," + counter.getMissedCount() + "]");
+        }
+        writer.write('}');
+    }
+
+    private static void string(final Writer writer, final String value) throws IOException {
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                writer.write('\\');
+                writer.write(c);
+            } else if (c < 0x20) {
+                writer.write(String.format("\\u%04x", (int) c));
+            } else {
+                writer.write(c);
+            }
+        }
+        writer.write('"');
+    }
+}
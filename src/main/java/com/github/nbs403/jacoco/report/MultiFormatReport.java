@@ -0,0 +1,193 @@
+package com.github.nbs403.jacoco.report;
+
+import com.github.nbs403.jacoco.annotations.ReportFormat;
+import org.jacoco.core.analysis.IBundleCoverage;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.SessionInfoStore;
+import org.jacoco.report.FileMultiReportOutput;
+import org.jacoco.report.IReportVisitor;
+import org.jacoco.report.ISourceFileLocator;
+import org.jacoco.report.MultiReportVisitor;
+import org.jacoco.report.csv.CSVFormatter;
+import org.jacoco.report.html.HTMLFormatter;
+import org.jacoco.report.xml.XMLFormatter;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Renders any combination of report formats into one report directory, from a single traversal of the bundle
+ * coverage - or of several bundles, each in its own group - through a {@link MultiReportVisitor}.
+ * The report files are closed even when rendering fails part way.
+ */
+public final class MultiFormatReport {
+
+    static final String XML_FILE = "jacoco.xml";
+    static final String CSV_FILE = "jacoco.csv";
+    static final String JSON_FILE = "jacoco-summary.json";
+
+    private MultiFormatReport() {
+    }
+
+    /**
+     * Parses a comma separated list of format names, e.g. "html,json"
+     *
+     * @param formats       - format names, blank for no format
+     * @param defaultFormat - formats used when formats is null
+     * @return parsed formats
+     * @throws IllegalArgumentException if a name is not a {@link ReportFormat}
+     */
+    public static Set<ReportFormat> parse(final String formats, final Set<ReportFormat> defaultFormat) {
+        if (formats == null) {
+            return defaultFormat;
+        }
+        final Set<ReportFormat> parsed = EnumSet.noneOf(ReportFormat.class);
+        for (final String format : formats.split(",")) {
+            if (!format.trim().isEmpty()) {
+                parsed.add(ReportFormat.valueOf(format.trim().toUpperCase(Locale.ROOT)));
+            }
+        }
+        return parsed;
+    }
+
+    /**
+     * Renders the bundle coverage in the given formats
+     *
+     * @param formats            - formats to render, nothing is rendered if empty
+     * @param incrementalHtml    - rewrite only changed HTML pages, see {@link IncrementalHtmlReport}
+     * @param bundleCoverage     - coverage to report
+     * @param sessionInfoStore   - session infos store
+     * @param executionDataStore - execution data content
+     * @param reportDirectory    - directory of the report
+     * @param sourceFileLocator  - source files locator, only read by the HTML report
+     * @throws IOException if the report cannot be written
+     */
+    public static void render(final Collection<ReportFormat> formats, final boolean incrementalHtml,
+                              final IBundleCoverage bundleCoverage, final SessionInfoStore sessionInfoStore,
+                              final ExecutionDataStore executionDataStore, final File reportDirectory,
+                              final ISourceFileLocator sourceFileLocator) throws IOException {
+        if (formats.isEmpty()) {
+            return;
+        }
+        Files.createDirectories(reportDirectory.toPath());
+        try (ReportFiles files = new ReportFiles(reportDirectory)) {
+            final List<IReportVisitor> visitors = new ArrayList<>();
+            ISourceFileLocator locator = sourceFileLocator;
+            for (final ReportFormat format : EnumSet.copyOf(formats)) {
+                if (format == ReportFormat.HTML && incrementalHtml) {
+                    final IncrementalHtmlReport html = IncrementalHtmlReport.forBundle(bundleCoverage,
+                                                                                       reportDirectory);
+                    visitors.add(html.createVisitor());
+                    locator = html.createLocator(sourceFileLocator);
+                } else {
+                    visitors.add(createVisitor(format, files));
+                }
+            }
+            final IReportVisitor visitor = visitors.size() == 1 ? visitors.get(0) : new MultiReportVisitor(visitors);
+            visitor.visitInfo(sessionInfoStore.getInfos(), executionDataStore.getContents());
+            visitor.visitBundle(bundleCoverage, locator);
+            visitor.visitEnd();
+        }
+    }
+
+    /**
+     * Renders several bundle coverages in the given formats, as one report where every bundle is a group named after
+     * its key. The HTML report is always written in full
+     *
+     * @param formats            - formats to render, nothing is rendered if empty
+     * @param groups             - coverage of every group, in report order
+     * @param sessionInfoStore   - session infos of all groups
+     * @param executionDataStore - execution data of all groups
+     * @param reportDirectory    - directory of the report
+     * @param sourceFileLocator  - source files locator, only read by the HTML report
+     * @throws IOException if the report cannot be written
+     */
+    public static void renderGroups(final Collection<ReportFormat> formats, final Map<String, IBundleCoverage> groups,
+                                    final SessionInfoStore sessionInfoStore,
+                                    final ExecutionDataStore executionDataStore, final File reportDirectory,
+                                    final ISourceFileLocator sourceFileLocator) throws IOException {
+        if (formats.isEmpty()) {
+            return;
+        }
+        Files.createDirectories(reportDirectory.toPath());
+        try (ReportFiles files = new ReportFiles(reportDirectory)) {
+            final List<IReportVisitor> visitors = new ArrayList<>();
+            for (final ReportFormat format : EnumSet.copyOf(formats)) {
+                visitors.add(createVisitor(format, files));
+            }
+            final IReportVisitor visitor = visitors.size() == 1 ? visitors.get(0) : new MultiReportVisitor(visitors);
+            visitor.visitInfo(sessionInfoStore.getInfos(), executionDataStore.getContents());
+            for (final Map.Entry<String, IBundleCoverage> group : groups.entrySet()) {
+                visitor.visitGroup(group.getKey()).visitBundle(group.getValue(), sourceFileLocator);
+            }
+            visitor.visitEnd();
+        }
+    }
+
+    private static IReportVisitor createVisitor(final ReportFormat format, final ReportFiles files)
+            throws IOException {
+        switch (format) {
+            case HTML:
+                return new HTMLFormatter().createVisitor(new FileMultiReportOutput(files.reportDirectory));
+            case XML:
+                return new XMLFormatter().createVisitor(files.open(XML_FILE));
+            case CSV:
+                return new CSVFormatter().createVisitor(files.open(CSV_FILE));
+            case JSON:
+                return new JsonSummaryFormatter().createVisitor(files.open(JSON_FILE));
+            default:
+                throw new IllegalArgumentException("Unsupported report format " + format);
+        }
+    }
+
+    /**
+     * Single file reports opened for one rendering. The formatters close them on visitEnd, closing them again once
+     * rendering is over releases the files of a rendering that failed before
+     */
+    private static final class ReportFiles implements Closeable {
+        private final File reportDirectory;
+        private final List<OutputStream> outputs = new ArrayList<>();
+
+        private ReportFiles(final File reportDirectory) {
+            this.reportDirectory = reportDirectory;
+        }
+
+        private OutputStream open(final String fileName) throws IOException {
+            final OutputStream output = new BufferedOutputStream(
+                    new FileOutputStream(new File(reportDirectory, fileName)));
+            outputs.add(output);
+            return output;
+        }
+
+        @Override
+        public void close() throws IOException {
+            IOException failure = null;
+            for (final OutputStream output : outputs) {
+                try {
+                    output.close();
+                } catch (final IOException e) {
+                    if (failure == null) {
+                        failure = e;
+                    } else {
+                        failure.addSuppressed(e);
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.github.nbs403.jacoco.report;
+
+import com.github.nbs403.jacoco.utils.Constants;
+import com.github.nbs403.jacoco.utils.Settings;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded work queue and worker pool rendering coverage reports off the test thread.
+ * Submitting blocks the test thread while the queue is full, so reports cannot pile up faster than they are written.
+ * Jobs for the same report directory are rendered one at a time, and a job still waiting in the queue is replaced by
+ * a newer job for the same directory - only the latest coverage of a growing scenario is worth writing.
+ * The lock of a directory is only kept while it has render tasks queued or running.
+ */
+public final class ReportRenderQueue {
+
+    private static final Logger LOG = Logger.getLogger(String.valueOf(ReportRenderQueue.class));
+    private static final int DEFAULT_QUEUE_SIZE = 64;
+
+    private static ReportRenderQueue shared;
+
+    private final ThreadPoolExecutor executor;
+    private final Map<File, RenderJob> pending = new ConcurrentHashMap<>();
+    private final Map<File, DirectoryLock> directoryLocks = new ConcurrentHashMap<>();
+    private final AtomicInteger failures = new AtomicInteger();
+
+    /**
+     * A report rendering job, holding its own snapshot of the coverage data
+     */
+    @FunctionalInterface
+    public interface RenderJob {
+        void render() throws IOException;
+    }
+
+    /**
+     * @param threads   - number of rendering workers
+     * @param queueSize - number of jobs waiting for a worker before submitting blocks
+     */
+    public ReportRenderQueue(final int threads, final int queueSize) {
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ThreadFactory threadFactory = runnable -> {
+            final Thread thread = new Thread(runnable, "jacoco-report-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                                          new ArrayBlockingQueue<>(queueSize), threadFactory,
+                                          ReportRenderQueue::waitForCapacity);
+    }
+
+    /**
+     * Returns the queue shared by all extensions in this JVM, configured by JACOCO_REPORT_THREADS and
+     * JACOCO_REPORT_QUEUE_SIZE
+     *
+     * @return shared render queue
+     */
+    public static synchronized ReportRenderQueue shared() {
+        if (shared == null) {
+            shared = new ReportRenderQueue(
+                    Settings.getInt(Constants.JACOCO_REPORT_THREADS, Runtime.getRuntime().availableProcessors()),
+                    Settings.getInt(Constants.JACOCO_REPORT_QUEUE_SIZE, DEFAULT_QUEUE_SIZE));
+        }
+        return shared;
+    }
+
+    /**
+     * Waits for all reports submitted to the shared queue, if it was ever used. Failed reports do not fail their test,
+     * their number is logged once all are done
+     *
+     * @return number of reports that failed
+     */
+    public static int drainShared() {
+        final ReportRenderQueue queue;
+        synchronized (ReportRenderQueue.class) {
+            queue = shared;
+            shared = null;
+        }
+        if (queue == null) {
+            return 0;
+        }
+        final int failed = queue.drain();
+        if (failed > 0) {
+            LOG.error(String.format("%d coverage reports failed, see the errors above", failed));
+        }
+        return failed;
+    }
+
+    /**
+     * Queues a report job, blocking while the queue is full
+     *
+     * @param reportDirectory - directory the job writes to
+     * @param job             - rendering job
+     */
+    public void submit(final File reportDirectory, final RenderJob job) {
+        final File key = reportDirectory.getAbsoluteFile();
+        if (pending.put(key, job) == null) {
+            final DirectoryLock lock = directoryLocks.compute(key, (directory, current) -> {
+                final DirectoryLock acquired = current == null ? new DirectoryLock() : current;
+                acquired.tasks++;
+                return acquired;
+            });
+            try {
+                executor.execute(() -> render(key, lock));
+            } catch (final RejectedExecutionException e) {
+                release(key);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Stops accepting jobs and waits until every queued report is written
+     *
+     * @return number of jobs that failed
+     */
+    public int drain() {
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                LOG.info(String.format("Waiting for %d coverage reports to be written", executor.getQueue().size()));
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return failures.get();
+    }
+
+    /**
+     * @return number of report directories with render tasks queued or running
+     */
+    int getActiveDirectoryCount() {
+        return directoryLocks.size();
+    }
+
+    private void render(final File reportDirectory, final DirectoryLock lock) {
+        try {
+            synchronized (lock) {
+                final RenderJob job = pending.remove(reportDirectory);
+                if (job == null) {
+                    return;
+                }
+                try {
+                    job.render();
+                } catch (final IOException | RuntimeException e) {
+                    failures.incrementAndGet();
+                    LOG.error(String.format("Failed to write coverage report %s", reportDirectory), e);
+                }
+            }
+        } finally {
+            release(reportDirectory);
+        }
+    }
+
+    /**
+     * Counts a render task of the directory as done, dropping the directory lock after its last task
+     *
+     * @param reportDirectory - directory of the task
+     */
+    private void release(final File reportDirectory) {
+        directoryLocks.computeIfPresent(reportDirectory, (directory, lock) -> --lock.tasks == 0 ? null : lock);
+    }
+
+    private static void waitForCapacity(final Runnable runnable, final ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Coverage report queue is already drained");
+        }
+        try {
+            executor.getQueue().put(runnable);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted waiting for coverage report queue", e);
+        }
+    }
+
+    /**
+     * Serializes the rendering of one directory, counting its render tasks queued or running
+     */
+    private static final class DirectoryLock {
+        private int tasks;
+    }
+}
@@ -0,0 +1,175 @@
+package com.github.nbs403.jacoco.report;
+
+import com.github.nbs403.jacoco.analysis.ClassFilter;
+import com.github.nbs403.jacoco.analysis.StructureCache;
+import com.github.nbs403.jacoco.annotations.ReportFormat;
+import com.github.nbs403.jacoco.data.ExecutionDataMerger;
+import com.github.nbs403.jacoco.metrics.CoverageMetrics;
+import com.github.nbs403.jacoco.metrics.Phase;
+import org.apache.log4j.Logger;
+import org.jacoco.core.analysis.IBundleCoverage;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.SessionInfoStore;
+import org.jacoco.report.ISourceFileLocator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * End of run report of all scenarios of a test plan: one report with a group per scenario, in name order, and a last
+ * "All Scenarios" group with the union of their coverage. A scenario named like the union group is renamed with a
+ * " (scenario)" suffix in the report.
+ * The classes are analyzed in a single pass for all scenarios and the union, see
+ * {@link StructureCache#analyze(List, ClassFilter, List, List)}, instead of one analysis per scenario.
+ * Scenarios register their live execution data while the tests run, it is only read by {@link #writeAll()} once all
+ * tests are done.
+ */
+public final class ScenarioSummaryReport {
+
+    static final String ALL_SCENARIOS = "All Scenarios";
+    private static final String SCENARIO_SUFFIX = " (scenario)";
+    private static final Logger LOG = Logger.getLogger(String.valueOf(ScenarioSummaryReport.class));
+    private static final Map<File, ScenarioSummaryReport> REPORTS = new ConcurrentHashMap<>();
+
+    private final File reportDirectory;
+    private final List<File> classRoots;
+    private final ClassFilter classFilter;
+    private final Set<ReportFormat> formats;
+    private final ISourceFileLocator sourceFileLocator;
+    private final Map<String, Scenario> scenarios = new ConcurrentSkipListMap<>();
+
+    /**
+     * @param reportDirectory   - directory of the report
+     * @param classRoots        - classes directories and archives
+     * @param classFilter       - classes to analyze
+     * @param formats           - formats of the report
+     * @param sourceFileLocator - source files locator, only read by the HTML report
+     */
+    public ScenarioSummaryReport(final File reportDirectory, final List<File> classRoots, final ClassFilter classFilter,
+                                 final Set<ReportFormat> formats, final ISourceFileLocator sourceFileLocator) {
+        this.reportDirectory = reportDirectory;
+        this.classRoots = classRoots;
+        this.classFilter = classFilter;
+        this.formats = formats;
+        this.sourceFileLocator = sourceFileLocator;
+    }
+
+    /**
+     * Returns the summary report shared by this JVM for the given directory, creating it on first use
+     *
+     * @param reportDirectory   - directory of the report
+     * @param classRoots        - classes directories and archives
+     * @param classFilter       - classes to analyze
+     * @param formats           - formats of the report
+     * @param sourceFileLocator - source files locator, only read by the HTML report
+     * @return the shared report, with the settings of its first use
+     */
+    public static ScenarioSummaryReport forDirectory(final File reportDirectory, final List<File> classRoots,
+                                                     final ClassFilter classFilter, final Set<ReportFormat> formats,
+                                                     final ISourceFileLocator sourceFileLocator) {
+        return REPORTS.computeIfAbsent(reportDirectory.getAbsoluteFile(), directory -> new ScenarioSummaryReport(
+                directory, classRoots, classFilter, formats, sourceFileLocator));
+    }
+
+    /**
+     * Writes every shared summary report and forgets them, a failed report is logged
+     */
+    public static void writeAll() {
+        for (final ScenarioSummaryReport report : REPORTS.values()) {
+            try {
+                report.write();
+            } catch (final IOException e) {
+                LOG.warn("Failed writing scenario summary report " + report.reportDirectory, e);
+            }
+        }
+        REPORTS.clear();
+    }
+
+    /**
+     * Registers the execution data of a scenario, only the first registration of a scenario is kept
+     *
+     * @param scenario           - name of the scenario
+     * @param sessionInfoStore   - session infos of the scenario
+     * @param executionDataStore - execution data of the scenario, read when the report is written
+     */
+    public void add(final String scenario, final SessionInfoStore sessionInfoStore,
+                    final ExecutionDataStore executionDataStore) {
+        scenarios.putIfAbsent(scenario, new Scenario(sessionInfoStore, executionDataStore));
+    }
+
+    /**
+     * Analyzes the classes once for all registered scenarios and their union, and renders the grouped report
+     *
+     * @throws IOException if a class file cannot be analyzed or the report cannot be written
+     */
+    public void write() throws IOException {
+        if (scenarios.isEmpty() || formats.isEmpty()) {
+            return;
+        }
+        final List<String> titles = new ArrayList<>();
+        final List<ExecutionDataStore> executionDataStores = new ArrayList<>();
+        final SessionInfoStore allSessions = new SessionInfoStore();
+        final ExecutionDataStore allData = new ExecutionDataStore();
+        try (CoverageMetrics.Timer timer = CoverageMetrics.start(Phase.MERGE)) {
+            final ExecutionDataMerger merger = new ExecutionDataMerger(allData);
+            for (final Map.Entry<String, Scenario> scenario : scenarios.entrySet()) {
+                titles.add(getTitle(scenario.getKey()));
+                executionDataStores.add(scenario.getValue().executionData);
+                merger.merge(scenario.getValue().executionData);
+                scenario.getValue().sessionInfos.accept(allSessions);
+            }
+            timer.classes(allData.getContents().size());
+        }
+        titles.add(ALL_SCENARIOS);
+        executionDataStores.add(allData);
+
+        final List<IBundleCoverage> bundles;
+        try (CoverageMetrics.Timer timer = CoverageMetrics.start(Phase.ANALYZE)) {
+            bundles = StructureCache.analyze(classRoots, classFilter, executionDataStores, titles);
+            timer.classes(bundles.get(bundles.size() - 1).getClassCounter().getTotalCount());
+        }
+        final Map<String, IBundleCoverage> groups = new LinkedHashMap<>();
+        for (int i = 0; i < titles.size(); i++) {
+            groups.put(titles.get(i), bundles.get(i));
+        }
+        try (CoverageMetrics.Timer timer = CoverageMetrics.start(Phase.REPORT)) {
+            timer.classes(bundles.get(bundles.size() - 1).getClassCounter().getTotalCount());
+            MultiFormatReport.renderGroups(formats, groups, allSessions, allData, reportDirectory,
+                                           sourceFileLocator);
+        }
+        LOG.debug(String.format("Wrote summary report of %d scenarios to %s", scenarios.size(), reportDirectory));
+    }
+
+    /**
+     * @param scenario - scenario name
+     * @return group title of the scenario, its name unless it clashes with the union group
+     */
+    private String getTitle(final String scenario) {
+        if (!scenario.equals(ALL_SCENARIOS)) {
+            return scenario;
+        }
+        String title = scenario + SCENARIO_SUFFIX;
+        while (scenarios.containsKey(title)) {
+            title += SCENARIO_SUFFIX;
+        }
+        LOG.warn(String.format("Scenario %s is reported as %s in %s", scenario, title, reportDirectory));
+        return title;
+    }
+
+    private static final class Scenario {
+        private final SessionInfoStore sessionInfos;
+        private final ExecutionDataStore executionData;
+
+        private Scenario(final SessionInfoStore sessionInfos, final ExecutionDataStore executionData) {
+            this.sessionInfos = sessionInfos;
+            this.executionData = executionData;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.github.nbs403.jacoco.report;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+import org.jacoco.report.ISourceFileLocator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Source file locator shared by all reports of a run, keeping decoded source files in memory.
+ * Sources are looked up in the roots in order, a root being a sources directory or a source jar or zip. The cache is
+ * bounded by the total length of the cached sources and evicts the least recently used files first.
+ * A cached file is checked against its file - or its source jar - modification time and size on every lookup and read
+ * again when it changed.
+ */
+public final class SourceCache implements ISourceFileLocator {
+
+    private static final Logger LOG = Logger.getLogger(String.valueOf(SourceCache.class));
+    private static final Map<List<File>, SourceCache> CACHES = new ConcurrentHashMap<>();
+
+    private final List<SourceRoot> roots = new ArrayList<>();
+    private final Charset encoding;
+    private final int tabWidth;
+    private final long capacity;
+    private final LinkedHashMap<String, CachedSource> sources = new LinkedHashMap<>(16, 0.75f, true);
+    private long length;
+    private long hitCount;
+    private long missCount;
+
+    /**
+     * @param sourceRoots - sources directories and source archives, in lookup order
+     * @param encoding    - encoding of the source files
+     * @param tabWidth    - tab width of the source files
+     * @param capacity    - maximum total length, in characters, of the cached sources
+     */
+    public SourceCache(final List<File> sourceRoots, final String encoding, final int tabWidth, final long capacity) {
+        for (final File sourceRoot : sourceRoots) {
+            roots.add(new SourceRoot(sourceRoot.getAbsoluteFile()));
+        }
+        this.encoding = Charset.forName(encoding);
+        this.tabWidth = tabWidth;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns the cache shared by all reports of this JVM for the given roots, creating it on first use
+     *
+     * @param sourceRoots - sources directories and source archives, in lookup order
+     * @param encoding    - encoding of the source files
+     * @param tabWidth    - tab width of the source files
+     * @param capacity    - maximum total length, in characters, of the cached sources
+     * @return the shared cache, created with the encoding, tab width and capacity of its first use
+     */
+    public static SourceCache forRoots(final List<File> sourceRoots, final String encoding, final int tabWidth,
+                                       final long capacity) {
+        return CACHES.computeIfAbsent(sourceRoots.stream().map(File::getAbsoluteFile).collect(Collectors.toList()),
+                                      roots -> new SourceCache(roots, encoding, tabWidth, capacity));
+    }
+
+    /**
+     * Closes the source archives of all shared caches, they are opened again on next use
+     */
+    public static void closeAll() {
+        for (final SourceCache cache : CACHES.values()) {
+            for (final SourceRoot root : cache.roots) {
+                root.close();
+            }
+        }
+    }
+
+    @Override
+    public Reader getSourceFile(final String packageName, final String fileName) throws IOException {
+        final String path = packageName.isEmpty() ? fileName : packageName + "/" + fileName;
+        synchronized (this) {
+            final CachedSource cached = sources.get(path);
+            if (cached != null && cached.root.isCurrent(path, cached)) {
+                hitCount++;
+                return new StringReader(cached.content);
+            }
+            missCount++;
+        }
+        //Read outside the lock so reports rendered in parallel do not wait on each other's disk reads
+        for (final SourceRoot root : roots) {
+            final CachedSource loaded = root.read(path, encoding);
+            if (loaded != null) {
+                put(path, loaded);
+                return new StringReader(loaded.content);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int getTabWidth() {
+        return tabWidth;
+    }
+
+    /**
+     * @return number of lookups served from memory
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return number of lookups that read, or failed to find, the source file
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return total length, in characters, of the cached sources
+     */
+    public synchronized long getLength() {
+        return length;
+    }
+
+    private synchronized void put(final String path, final CachedSource source) {
+        if (source.content.length() > capacity) {
+            return;
+        }
+        final CachedSource previous = sources.put(path, source);
+        if (previous != null) {
+            length -= previous.content.length();
+        }
+        length += source.content.length();
+        final Iterator<CachedSource> leastRecentlyUsed = sources.values().iterator();
+        while (length > capacity && leastRecentlyUsed.hasNext()) {
+            length -= leastRecentlyUsed.next().content.length();
+            leastRecentlyUsed.remove();
+        }
+    }
+
+    private static final class CachedSource {
+        private final SourceRoot root;
+        private final String content;
+        private final long lastModified;
+        private final long size;
+
+        private CachedSource(final SourceRoot root, final String content, final long lastModified,
+                             final long size) {
+            this.root = root;
+            this.content = content;
+            this.lastModified = lastModified;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Sources directory or source archive. Archive entries are looked up in the central directory of the archive,
+     * opened once and reopened when the archive changes
+     */
+    private static final class SourceRoot {
+        private final File file;
+        private final boolean archive;
+        private ZipFile zipFile;
+        private long zipLastModified;
+        private long zipSize;
+
+        private SourceRoot(final File file) {
+            this.file = file;
+            final String name = file.getName().toLowerCase(Locale.ROOT);
+            this.archive = name.endsWith(".jar") || name.endsWith(".zip");
+        }
+
+        private boolean isCurrent(final String path, final CachedSource source) {
+            final File stamped = archive ? file : new File(file, path);
+            return stamped.lastModified() == source.lastModified && stamped.length() == source.size;
+        }
+
+        private CachedSource read(final String path, final Charset encoding) throws IOException {
+            if (!archive) {
+                final File sourceFile = new File(file, path);
+                if (!sourceFile.isFile()) {
+                    return null;
+                }
+                final long lastModified = sourceFile.lastModified();
+                final long size = sourceFile.length();
+                return new CachedSource(this, new String(Files.readAllBytes(sourceFile.toPath()), encoding),
+                                        lastModified, size);
+            }
+            synchronized (this) {
+                final ZipFile sources = open();
+                if (sources == null) {
+                    return null;
+                }
+                final ZipEntry entry = sources.getEntry(path);
+                if (entry == null) {
+                    return null;
+                }
+                try (InputStream inputStream = sources.getInputStream(entry)) {
+                    return new CachedSource(this, IOUtils.toString(inputStream, encoding), zipLastModified, zipSize);
+                }
+            }
+        }
+
+        private ZipFile open() throws IOException {
+            if (!file.isFile()) {
+                return null;
+            }
+            if (zipFile != null && zipLastModified == file.lastModified() && zipSize == file.length()) {
+                return zipFile;
+            }
+            if (zipFile != null) {
+                LOG.debug(String.format("Source archive %s changed, opening it again", file));
+                zipFile.close();
+            }
+            zipLastModified = file.lastModified();
+            zipSize = file.length();
+            zipFile = new ZipFile(file);
+            return zipFile;
+        }
+
+        private synchronized void close() {
+            if (zipFile == null) {
+                return;
+            }
+            try {
+                zipFile.close();
+            } catch (final IOException e) {
+                LOG.debug("Failed to close " + file, e);
+            }
+            zipFile = null;
+        }
+    }
+}
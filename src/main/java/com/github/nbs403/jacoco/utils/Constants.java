@@ -4,8 +4,45 @@ public class Constants {
 
     public static final String JACOCO_HOST = "JACOCO_HOST";
     public static final String JACOCO_PORT = "JACOCO_PORT";
+    // Comma separated sources directories and source jars, looked up in order
     public static final String JACOCO_SOURCES_DIR = "JACOCO_SOURCE_DIR";
+    // Comma separated classes directories and jar, war, ear or zip archives of the application
     public static final String JACOCO_CLASSES_DIR = "JACOCO_CLASSES_DIR";
+    // Comma separated host:port list of agents, used instead of JACOCO_HOST and JACOCO_PORT when set
+    public static final String JACOCO_AGENTS = "JACOCO_AGENTS";
+    // Per agent connect and dump timeout in milliseconds
+    public static final String JACOCO_AGENT_TIMEOUT = "JACOCO_AGENT_TIMEOUT";
+    // Render reports on a background worker pool, drained at the end of the test plan
+    public static final String JACOCO_ASYNC_REPORTS = "JACOCO_ASYNC_REPORTS";
+    public static final String JACOCO_REPORT_THREADS = "JACOCO_REPORT_THREADS";
+    public static final String JACOCO_REPORT_QUEUE_SIZE = "JACOCO_REPORT_QUEUE_SIZE";
+    // Number of scenario tests between writes of the scenario merged.exec, 0 writes it only at the end of the test plan
+    public static final String JACOCO_SCENARIO_CHECKPOINT_INTERVAL = "JACOCO_SCENARIO_CHECKPOINT_INTERVAL";
+    // Only rewrite report pages whose coverage changed since the previous report in the same directory
+    public static final String JACOCO_INCREMENTAL_REPORTS = "JACOCO_INCREMENTAL_REPORTS";
+    // Record per test coverage as hit probes in a single append-only store instead of one .exec file per test
+    public static final String JACOCO_PROBE_STORE = "JACOCO_PROBE_STORE";
+    // Index the classes and methods executed by every test into coveragereport/test-impact.idx for test selection
+    public static final String JACOCO_TEST_IMPACT = "JACOCO_TEST_IMPACT";
+    // Comma separated report formats - html, xml, csv, json - of all reports, html by default, blank for no report
+    public static final String JACOCO_REPORT_FORMATS = "JACOCO_REPORT_FORMATS";
+    // Report formats of single test reports, JACOCO_REPORT_FORMATS by default
+    public static final String JACOCO_TEST_REPORT_FORMATS = "JACOCO_TEST_REPORT_FORMATS";
+    // Write per phase timings of the run, per scenario, to coveragereport/coverage-metrics.json
+    public static final String JACOCO_METRICS = "JACOCO_METRICS";
+    // Write and merge dumps while they are read from the agents, classes without hits are dropped as they arrive
+    public static final String JACOCO_STREAMING_DUMPS = "JACOCO_STREAMING_DUMPS";
+    // Classes to analyze and report, agent style patterns e.g. com.acme.* separated by : or ,
+    public static final String JACOCO_INCLUDES = "JACOCO_INCLUDES";
+    public static final String JACOCO_EXCLUDES = "JACOCO_EXCLUDES";
+    // Size, in millions of characters, of the source files kept in memory for all reports of the run
+    public static final String JACOCO_SOURCE_CACHE_CHARS_M = "JACOCO_SOURCE_CACHE_CHARS_M";
+    // Share the report of tests that hit the same probes and skip scenario merges and renders that add no coverage
+    public static final String JACOCO_DEDUPLICATE = "JACOCO_DEDUPLICATE";
+    // reset (default) to reset the agents before every test, differential to diff snapshots of never reset agents
+    public static final String JACOCO_CAPTURE_MODE = "JACOCO_CAPTURE_MODE";
+    // Write a report of all scenarios, grouped by scenario with their union, at the end of the test plan
+    public static final String JACOCO_ALL_SCENARIOS_REPORT = "JACOCO_ALL_SCENARIOS_REPORT";
     private Constants() {
     }
 }
@@ -0,0 +1,67 @@
+package com.github.nbs403.jacoco.utils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public final class Settings {
+
+    private Settings() {
+    }
+
+    /**
+     * Simple helper method to check the passed key in environment variables first, then system properties
+     *
+     * @param key - key to get value for
+     * @return environment value - if exists - or System.getProperty value if exists, or null
+     */
+    public static String getEnvOrSystemProperty(final String key) {
+        //First check environment variables if set
+        if (System.getenv(key) != null) {
+            return System.getenv(key);
+        }
+        if (System.getProperty(key) != null) {
+            return System.getProperty(key);
+        }
+        return null;
+    }
+
+    /**
+     * @param key          - key to get value for
+     * @param defaultValue - value used when the key is not set
+     * @return integer value of the key, or defaultValue if not set
+     */
+    public static int getInt(final String key, final int defaultValue) {
+        final String value = getEnvOrSystemProperty(key);
+        return value == null || value.trim().isEmpty() ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    /**
+     * @param key          - key to get value for
+     * @param defaultValue - value used when the key is not set
+     * @return boolean value of the key, or defaultValue if not set
+     */
+    public static boolean getBoolean(final String key, final boolean defaultValue) {
+        final String value = getEnvOrSystemProperty(key);
+        return value == null || value.trim().isEmpty() ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+
+    /**
+     * @param key - key to get value for
+     * @return files of the comma separated value of the key, the working directory if not set
+     */
+    public static List<File> getFiles(final String key) {
+        final String value = getEnvOrSystemProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return Collections.singletonList(new File("."));
+        }
+        final List<File> files = new ArrayList<>();
+        for (final String file : value.split(",")) {
+            if (!file.trim().isEmpty()) {
+                files.add(new File(file.trim()));
+            }
+        }
+        return files;
+    }
+}
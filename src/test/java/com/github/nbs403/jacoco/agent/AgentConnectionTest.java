@@ -0,0 +1,63 @@
+package com.github.nbs403.jacoco.agent;
+
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class AgentConnectionTest {
+
+    private AgentSimulator agent;
+
+    @BeforeEach
+    private void init() throws IOException {
+        agent = new AgentSimulator();
+        agent.getExecutionData().put(new ExecutionData(1, "a/A", new boolean[]{true, false}));
+    }
+
+    @AfterEach
+    private void cleanup() throws IOException {
+        agent.close();
+    }
+
+    /**
+     * Resets and dumps of many tests share a single socket
+     *
+     * @throws IOException IOException
+     */
+    @Test
+    public void reusesSocketAcrossCommands() throws IOException {
+        try (final AgentConnection connection = new AgentConnection(agent.getHost(), agent.getPort(), 3)) {
+            for (int test = 0; test < 20; test++) {
+                connection.reset();
+                agent.getExecutionData().get(1).getProbes()[1] = true;
+                final ExecutionDataStore dump = connection.dump(true).getExecutionDataStore();
+                assertThat(dump.get(1).getProbes()[1], is(true));
+                assertThat(dump.get(1).getProbes()[0], is(false));
+            }
+        }
+        assertThat(agent.getConnectionCount(), is(1));
+        assertThat(agent.getCommandCount(), is(40));
+    }
+
+    /**
+     * A dropped socket is replaced by a new connection on the next command
+     *
+     * @throws IOException IOException
+     */
+    @Test
+    public void reconnectsAfterConnectionLoss() throws IOException {
+        try (final AgentConnection connection = new AgentConnection(agent.getHost(), agent.getPort(), 3)) {
+            connection.dump(false);
+            agent.dropConnections();
+            assertThat(connection.dump(false).getExecutionDataStore().get(1).getProbes()[0], is(true));
+        }
+        assertThat(agent.getConnectionCount(), is(2));
+    }
+}
@@ -0,0 +1,114 @@
+package com.github.nbs403.jacoco.agent;
+
+import com.github.nbs403.jacoco.utils.Constants;
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class AgentGroupTest {
+
+    private AgentSimulator first;
+    private AgentSimulator second;
+
+    @BeforeEach
+    private void init() throws IOException {
+        first = new AgentSimulator();
+        second = new AgentSimulator();
+        first.getExecutionData().put(new ExecutionData(1, "a/A", new boolean[]{true, false}));
+        second.getExecutionData().put(new ExecutionData(1, "a/A", new boolean[]{false, true}));
+        second.getExecutionData().put(new ExecutionData(2, "b/B", new boolean[]{true}));
+    }
+
+    @AfterEach
+    private void cleanup() throws IOException {
+        AgentConnection.closeAll();
+        first.close();
+        second.close();
+    }
+
+    /**
+     * Dumps of all agents are merged into one store
+     *
+     * @throws IOException IOException
+     */
+    @Test
+    public void mergesDumpsOfAllAgents() throws IOException {
+        final ExecutionDataStore merged =
+                AgentGroup.dump(Arrays.asList(endpoint(first), endpoint(second)), true).getExecutionDataStore();
+        assertThat(merged.get(1).getProbes(), equalTo(new boolean[]{true, true}));
+        assertThat(merged.get(2).getProbes(), equalTo(new boolean[]{true}));
+        assertThat(first.getExecutionData().get(1).getProbes()[0], is(false));
+    }
+
+    /**
+     * An agent that cannot be reached is left out, the command fails only when no agent answers
+     *
+     * @throws IOException IOException
+     */
+    @Test
+    public void leavesOutFailedAgents() throws IOException {
+        final AgentEndpoint down = endpoint(second);
+        second.close();
+        final ExecutionDataStore merged =
+                AgentGroup.dump(Arrays.asList(endpoint(first), down), false).getExecutionDataStore();
+        assertThat(merged.get(1).getProbes(), equalTo(new boolean[]{true, false}));
+        assertThrows(IOException.class, () -> AgentGroup.reset(Collections.singletonList(down)));
+    }
+
+    /**
+     * An agent dropping the connection instead of answering is left out like an unreachable one
+     *
+     * @throws IOException IOException
+     */
+    @Test
+    public void leavesOutAgentsDroppingCommands() throws IOException {
+        second.withFailureRate(1.0);
+        final ExecutionDataStore merged =
+                AgentGroup.dump(Arrays.asList(endpoint(first), endpoint(second)), false).getExecutionDataStore();
+        assertThat(merged.get(1).getProbes(), equalTo(new boolean[]{true, false}));
+        assertThat(merged.get(2), is((ExecutionData) null));
+        assertThrows(IOException.class, () -> AgentGroup.dump(Collections.singletonList(endpoint(second)), false));
+    }
+
+    /**
+     * An agent answering after the timeout is left out, its connection is released at the deadline and the next
+     * command reconnects
+     *
+     * @throws IOException IOException
+     */
+    @Test
+    public void reconnectsAfterTimeout() throws IOException {
+        System.setProperty(Constants.JACOCO_AGENT_TIMEOUT, "300");
+        try {
+            first.withLatency(2000L);
+            final ExecutionDataStore partial =
+                    AgentGroup.dump(Arrays.asList(endpoint(first), endpoint(second)), false).getExecutionDataStore();
+            assertThat(partial.get(1).getProbes(), equalTo(new boolean[]{false, true}));
+
+            first.withLatency(0L);
+            final long start = System.nanoTime();
+            final ExecutionDataStore merged =
+                    AgentGroup.dump(Arrays.asList(endpoint(first), endpoint(second)), false).getExecutionDataStore();
+            assertThat(merged.get(1).getProbes(), equalTo(new boolean[]{true, true}));
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000L, is(true));
+        } finally {
+            System.clearProperty(Constants.JACOCO_AGENT_TIMEOUT);
+        }
+    }
+
+    private static AgentEndpoint endpoint(final AgentSimulator agent) {
+        return new AgentEndpoint(agent.getHost(), agent.getPort());
+    }
+}
@@ -0,0 +1,209 @@
+package com.github.nbs403.jacoco.agent;
+
+import com.github.nbs403.jacoco.extensions.SyntheticClasses;
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.SessionInfo;
+import org.jacoco.core.runtime.RemoteControlReader;
+import org.jacoco.core.runtime.RemoteControlWriter;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process stand-in for a Jacoco agent in tcpserver mode, speaking the same protocol as the agent's TcpConnection:
+ * write the header, then answer every dump command with session info and execution data followed by CMD_OK.
+ * It can hold synthetic classes whose probes are hit at a given density before every dump, as if a test had run, and
+ * answer commands with latency or fail them by dropping the connection.
+ */
+public class AgentSimulator implements Closeable {
+
+    private final ServerSocket serverSocket;
+    private final ExecutionDataStore executionData = new ExecutionDataStore();
+    private final List<Socket> connections = new CopyOnWriteArrayList<>();
+    private final AtomicInteger commands = new AtomicInteger();
+    private long startTimeStamp = System.currentTimeMillis();
+    private final Random random = new Random(42);
+    private volatile double hitDensity;
+    private volatile long latencyMillis;
+    private volatile double failureRate;
+
+    public AgentSimulator() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        final Thread acceptor = new Thread(this::accept, "agent-simulator-" + getPort());
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public String getHost() {
+        return serverSocket.getInetAddress().getHostAddress();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Adds an empty entry for every class, e.g. synthetic classes also written as class files for the analysis
+     *
+     * @param synthetic - classes of the simulated application
+     * @return this simulator
+     */
+    public AgentSimulator withClasses(final SyntheticClasses synthetic) {
+        synchronized (executionData) {
+            for (final SyntheticClasses.SyntheticClass syntheticClass : synthetic.getClasses()) {
+                executionData.get(syntheticClass.id, syntheticClass.name, syntheticClass.probeCount);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * @param density - probability of every probe to be hit before each dump, 0 to keep the probes as they are
+     * @return this simulator
+     */
+    public AgentSimulator withHitDensity(final double density) {
+        hitDensity = density;
+        return this;
+    }
+
+    /**
+     * @param millis - delay before answering every command
+     * @return this simulator
+     */
+    public AgentSimulator withLatency(final long millis) {
+        latencyMillis = millis;
+        return this;
+    }
+
+    /**
+     * @param rate - probability of every command to fail, the connection is then closed without an answer
+     * @return this simulator
+     */
+    public AgentSimulator withFailureRate(final double rate) {
+        failureRate = rate;
+        return this;
+    }
+
+    /**
+     * @return execution data the simulated agent holds, tests can set probes on it
+     */
+    public ExecutionDataStore getExecutionData() {
+        return executionData;
+    }
+
+    /**
+     * @return number of connections accepted so far
+     */
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    /**
+     * @return number of dump or reset commands answered so far
+     */
+    public int getCommandCount() {
+        return commands.get();
+    }
+
+    /**
+     * Closes all open client connections, the simulator keeps accepting new ones
+     *
+     * @throws IOException IOException
+     */
+    public void dropConnections() throws IOException {
+        for (final Socket socket : connections) {
+            socket.close();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        dropConnections();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                final Socket socket = serverSocket.accept();
+                connections.add(socket);
+                final Thread handler = new Thread(() -> handle(socket), "agent-simulator-connection");
+                handler.setDaemon(true);
+                handler.start();
+            } catch (final IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void hit() {
+        for (final ExecutionData data : executionData.getContents()) {
+            final boolean[] probes = data.getProbes();
+            for (int p = 0; p < probes.length; p++) {
+                if (random.nextDouble() < hitDensity) {
+                    probes[p] = true;
+                }
+            }
+        }
+    }
+
+    private void handle(final Socket socket) {
+        try {
+            final RemoteControlWriter writer = new RemoteControlWriter(socket.getOutputStream());
+            final RemoteControlReader reader = new RemoteControlReader(new BufferedInputStream(socket.getInputStream()));
+            reader.setRemoteCommandVisitor((dump, reset) -> {
+                if (latencyMillis > 0) {
+                    try {
+                        Thread.sleep(latencyMillis);
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                synchronized (executionData) {
+                    if (failureRate > 0 && random.nextDouble() < failureRate) {
+                        commands.incrementAndGet();
+                        socket.close();
+                        return;
+                    }
+                    if (dump && hitDensity > 0) {
+                        hit();
+                    }
+                    if (dump) {
+                        writer.visitSessionInfo(new SessionInfo("simulator", startTimeStamp,
+                                                                System.currentTimeMillis()));
+                        executionData.accept(writer);
+                    }
+                    if (reset) {
+                        for (final ExecutionData data : executionData.getContents()) {
+                            data.reset();
+                        }
+                        //Like the agent's RuntimeData, a reset starts a new session
+                        startTimeStamp = Math.max(System.currentTimeMillis(), startTimeStamp + 1);
+                    }
+                }
+                commands.incrementAndGet();
+                writer.sendCmdOk();
+            });
+            while (reader.read()) {
+                //Commands are answered by the visitor
+            }
+        } catch (final IOException e) {
+            //Connection closed by the client or by dropConnections
+        } finally {
+            try {
+                socket.close();
+            } catch (final IOException ignored) {
+                //Already closed
+            }
+        }
+    }
+}
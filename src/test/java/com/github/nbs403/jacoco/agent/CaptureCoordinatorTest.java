@@ -0,0 +1,64 @@
+package com.github.nbs403.jacoco.agent;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CaptureCoordinatorTest {
+
+    private static final AgentEndpoint FIRST = new AgentEndpoint("first", 6400);
+    private static final AgentEndpoint SECOND = new AgentEndpoint("second", 6400);
+
+    /**
+     * A second capture of the same agent waits until the first window is closed
+     *
+     * @throws Exception Exception
+     */
+    @Test
+    public void serializesCapturesOfSameAgent() throws Exception {
+        final CaptureCoordinator coordinator = new CaptureCoordinator();
+        final CaptureCoordinator.CaptureWindow window = coordinator.open(Collections.singleton(FIRST));
+        final CompletableFuture<CaptureCoordinator.CaptureWindow> waiting =
+                CompletableFuture.supplyAsync(() -> open(coordinator, FIRST, SECOND));
+
+        assertThrows(TimeoutException.class, () -> waiting.get(200, TimeUnit.MILLISECONDS));
+        window.close();
+        waiting.get(5, TimeUnit.SECONDS).close();
+    }
+
+    /**
+     * Captures of different agents do not wait for each other
+     *
+     * @throws Exception Exception
+     */
+    @Test
+    public void overlapsCapturesOfDifferentAgents() throws Exception {
+        final CaptureCoordinator coordinator = new CaptureCoordinator();
+        final CaptureCoordinator.CaptureWindow window = coordinator.open(Collections.singleton(FIRST));
+        final CompletableFuture<CaptureCoordinator.CaptureWindow> other =
+                CompletableFuture.supplyAsync(() -> open(coordinator, SECOND));
+
+        other.get(5, TimeUnit.SECONDS).close();
+        window.close();
+        window.close();
+        assertThat(other.isDone(), is(true));
+    }
+
+    private static CaptureCoordinator.CaptureWindow open(final CaptureCoordinator coordinator,
+                                                         final AgentEndpoint... agents) {
+        try {
+            return coordinator.open(Arrays.asList(agents));
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
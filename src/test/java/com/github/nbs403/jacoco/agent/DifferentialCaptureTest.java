@@ -0,0 +1,85 @@
+package com.github.nbs403.jacoco.agent;
+
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class DifferentialCaptureTest {
+
+    private AgentSimulator agent;
+    private List<AgentEndpoint> agents;
+    private DifferentialCapture capture;
+
+    @BeforeEach
+    private void init() throws IOException {
+        agent = new AgentSimulator();
+        agent.getExecutionData().put(new ExecutionData(1, "a/A", new boolean[]{true, false, false}));
+        agents = Collections.singletonList(new AgentEndpoint(agent.getHost(), agent.getPort()));
+        capture = new DifferentialCapture();
+    }
+
+    @AfterEach
+    private void cleanup() throws IOException {
+        AgentConnection.closeAll();
+        agent.close();
+    }
+
+    /**
+     * A test's coverage is the probes newly set since the previous snapshot, the agent is never reset and the
+     * snapshot after a test serves as the snapshot before the next one
+     *
+     * @throws IOException IOException
+     */
+    @Test
+    public void capturesNewlySetProbesWithoutReset() throws IOException {
+        capture.before(agents);
+        setProbe(1, 1);
+        final ExecutionDataStore first = capture.after(agents).getExecutionDataStore();
+        assertThat(first.get(1).getProbes(), equalTo(new boolean[]{false, true, false}));
+
+        final int commands = agent.getCommandCount();
+        capture.before(agents);
+        assertThat("The previous snapshot must be reused", agent.getCommandCount(), is(commands));
+        setProbe(1, 2);
+        agent.getExecutionData().put(new ExecutionData(2, "b/B", new boolean[]{true}));
+        final ExecutionDataStore second = capture.after(agents).getExecutionDataStore();
+        assertThat(second.get(1).getProbes(), equalTo(new boolean[]{false, false, true}));
+        assertThat(second.get(2).getProbes(), equalTo(new boolean[]{true}));
+
+        final ExecutionDataStore third = capture.after(agents).getExecutionDataStore();
+        assertThat(third.get(1), is(nullValue()));
+        assertThat("Agent coverage must be kept", agent.getExecutionData().get(1).getProbes(),
+                   equalTo(new boolean[]{true, true, true}));
+    }
+
+    /**
+     * After a reset by another consumer of the agent the whole new snapshot is the test's coverage
+     *
+     * @throws IOException IOException
+     */
+    @Test
+    public void detectsResetBetweenSnapshots() throws IOException {
+        capture.before(agents);
+        AgentGroup.reset(agents);
+        setProbe(1, 0);
+        assertThat(capture.after(agents).getExecutionDataStore().get(1).getProbes(),
+                   equalTo(new boolean[]{true, false, false}));
+    }
+
+    private void setProbe(final long classId, final int probe) {
+        synchronized (agent.getExecutionData()) {
+            agent.getExecutionData().get(classId).getProbes()[probe] = true;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.github.nbs403.jacoco.analysis;
+
+import com.github.nbs403.jacoco.extensions.SyntheticClasses;
+import org.jacoco.core.data.ExecutionData;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+public class MethodProbeMapTest {
+
+    private File classesDir;
+    private SyntheticClasses synthetic;
+
+    @BeforeEach
+    private void init() throws IOException {
+        classesDir = Files.createTempDirectory("jacocoprobemap").toFile();
+        classesDir.deleteOnExit();
+        synthetic = SyntheticClasses.generate(classesDir, 2, 2);
+    }
+
+    /**
+     * Classes rejected by the class filter must resolve to no method
+     *
+     * @throws IOException IOException
+     */
+    @Test
+    public void skipsFilteredClasses() throws IOException {
+        final MethodProbeMap map =
+                MethodProbeMap.forRoots(Collections.singletonList(classesDir), ClassFilter.of("synthetic.p1.*", null));
+        assertThat(map.getExecutedMethods(executed(synthetic.getClasses().get(0))), is(empty()));
+        assertThat(map.getExecutedMethods(executed(synthetic.getClasses().get(1))),
+                   contains("<init>()V", "method0()I", "method1()I"));
+    }
+
+    /**
+     * A class rebuilt after the roots were scanned must be resolved from its new class file
+     *
+     * @throws IOException IOException
+     */
+    @Test
+    public void rescansChangedClasses() throws IOException {
+        final MethodProbeMap map = MethodProbeMap.forRoots(Collections.singletonList(classesDir), ClassFilter.ALL);
+        assertThat(map.getExecutedMethods(executed(synthetic.getClasses().get(0))),
+                   contains("<init>()V", "method0()I", "method1()I"));
+
+        final SyntheticClasses rebuilt = SyntheticClasses.generate(classesDir, 2, 3);
+        assertThat(rebuilt.getClasses().get(0).id, not(synthetic.getClasses().get(0).id));
+        assertThat(map.getExecutedMethods(executed(rebuilt.getClasses().get(0))),
+                   contains("<init>()V", "method0()I", "method1()I", "method2()I"));
+        assertThat(map.getExecutedMethods(executed(rebuilt.getClasses().get(1))),
+                   contains("<init>()V", "method0()I", "method1()I", "method2()I"));
+    }
+
+    private static ExecutionData executed(final SyntheticClasses.SyntheticClass syntheticClass) {
+        final boolean[] probes = new boolean[syntheticClass.probeCount];
+        Arrays.fill(probes, true);
+        return new ExecutionData(syntheticClass.id, syntheticClass.name, probes);
+    }
+}
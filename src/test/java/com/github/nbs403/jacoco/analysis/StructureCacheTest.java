@@ -0,0 +1,187 @@
+package com.github.nbs403.jacoco.analysis;
+
+import com.github.nbs403.jacoco.extensions.SyntheticClasses;
+import org.jacoco.core.analysis.Analyzer;
+import org.jacoco.core.analysis.CoverageBuilder;
+import org.jacoco.core.analysis.IBundleCoverage;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+public class StructureCacheTest {
+
+    private File classesDir;
+    private SyntheticClasses synthetic;
+
+    @BeforeEach
+    private void init() throws IOException {
+        classesDir = Files.createTempDirectory("jacococache").toFile();
+        classesDir.deleteOnExit();
+        synthetic = SyntheticClasses.generate(classesDir, 50, 4);
+    }
+
+    /**
+     * Cached analysis must produce the same counters as a fresh Analyzer pass, on first and repeated use
+     *
+     * @throws IOException IOException
+     */
+    @Test
+    public void cachedAnalysisMatchesAnalyzer() throws IOException {
+        final Random random = new Random(42);
+        final StructureCache cache = StructureCache.forRoot(classesDir);
+        for (int run = 0; run < 3; run++) {
+            final ExecutionDataStore store = synthetic.executionData(0.3, random);
+            final IBundleCoverage cached = cache.analyze(store, "cached");
+            final IBundleCoverage expected = analyze(store);
+            assertThat(cached.getInstructionCounter().getCoveredCount(),
+                       equalTo(expected.getInstructionCounter().getCoveredCount()));
+            assertThat(cached.getMethodCounter().getCoveredCount(),
+                       equalTo(expected.getMethodCounter().getCoveredCount()));
+            assertThat(cached.getClassCounter().getTotalCount(), equalTo(expected.getClassCounter().getTotalCount()));
+        }
+        assertThat(cache.size(), is(50));
+        assertThat(StructureCache.forRoot(classesDir), is(cache));
+    }
+
+    /**
+     * A class file rewritten with different content must be analyzed again
+     *
+     * @throws IOException IOException
+     */
+    @Test
+    public void changedClassFileIsReanalyzed() throws IOException {
+        final StructureCache cache = StructureCache.forRoot(classesDir);
+        final ExecutionDataStore empty = new ExecutionDataStore();
+        final int methods = cache.analyze(empty, "before").getMethodCounter().getTotalCount();
+
+        final SyntheticClasses.SyntheticClass first = synthetic.getClasses().get(0);
+        final File classFile = new File(classesDir, first.name + ".class");
+        Files.write(classFile.toPath(), SyntheticClasses.classBytes(first.name, 10));
+        assertThat(classFile.setLastModified(classFile.lastModified() + 2000), is(true));
+
+        assertThat(cache.analyze(empty, "after").getMethodCounter().getTotalCount(), is(methods + 6));
+    }
+
+    /**
+     * A root above the package root, e.g. the default JACOCO_CLASSES_DIR of the project directory, must name classes
+     * after their package so they can be filtered
+     *
+     * @throws IOException IOException
+     */
+    @Test
+    public void filtersClassesOfRootAbovePackages() throws IOException {
+        final File projectDir = Files.createTempDirectory("jacocoproject").toFile();
+        projectDir.deleteOnExit();
+        final SyntheticClasses projectClasses =
+                SyntheticClasses.generate(new File(projectDir, "build/classes/java/main"), 20, 2);
+        final List<String> names = new ArrayList<>();
+        for (final ClassRoot.ClassEntry entry : ClassRoot.forFile(projectDir).list()) {
+            names.add(entry.getName());
+        }
+        assertThat(names, containsInAnyOrder(projectClasses.getClasses().stream().map(c -> c.name).toArray()));
+
+        //synthetic.p1 and synthetic.p10 to p19
+        final ExecutionDataStore store = projectClasses.executionData(0.5, new Random(3));
+        assertThat(StructureCache.analyze(Collections.singletonList(projectDir), ClassFilter.of("synthetic.p1*", null),
+                                          store, "project").getClassCounter().getTotalCount(), is(11));
+    }
+
+    /**
+     * Classes of a war, in WEB-INF/classes and in the jars of WEB-INF/lib, are analyzed like classes of a directory
+     * and can be filtered by package
+     *
+     * @throws IOException IOException
+     */
+    @Test
+    public void analyzesNestedArchivesWithFilter() throws IOException {
+        final ByteArrayOutputStream libJar = new ByteArrayOutputStream();
+        try (ZipOutputStream jar = new ZipOutputStream(libJar)) {
+            for (final SyntheticClasses.SyntheticClass syntheticClass : synthetic.getClasses().subList(0, 25)) {
+                addClass(jar, "", syntheticClass.name);
+            }
+        }
+        final File war = new File(classesDir.getParentFile(), classesDir.getName() + ".war");
+        war.deleteOnExit();
+        try (OutputStream outputStream = new FileOutputStream(war);
+             ZipOutputStream zip = new ZipOutputStream(outputStream)) {
+            for (final SyntheticClasses.SyntheticClass syntheticClass : synthetic.getClasses().subList(25, 50)) {
+                addClass(zip, "WEB-INF/classes/", syntheticClass.name);
+            }
+            zip.putNextEntry(new ZipEntry("WEB-INF/lib/lib.jar"));
+            zip.write(libJar.toByteArray());
+        }
+
+        final ExecutionDataStore store = synthetic.executionData(0.3, new Random(7));
+        final IBundleCoverage archived = StructureCache.analyze(Collections.singletonList(war), ClassFilter.ALL, store,
+                                                                "war");
+        final IBundleCoverage expected = analyze(store);
+        assertThat(archived.getClassCounter().getTotalCount(), is(50));
+        assertThat(archived.getInstructionCounter().getCoveredCount(),
+                   equalTo(expected.getInstructionCounter().getCoveredCount()));
+
+        //synthetic.p1 and synthetic.p10 to p19, less excluded Class13
+        final ClassFilter filter = ClassFilter.of("synthetic.p1*", "*.Class13");
+        assertThat(StructureCache.analyze(Collections.singletonList(war), filter, store, "filtered")
+                                 .getClassCounter().getTotalCount(), is(10));
+        assertThat(filter.matches("synthetic/p2/Class2"), is(false));
+    }
+
+    /**
+     * A single pass over many stores gives every store the same coverage as its own analysis
+     *
+     * @throws IOException IOException
+     */
+    @Test
+    public void multiStoreAnalysisMatchesAnalyzer() throws IOException {
+        final Random random = new Random(11);
+        final List<ExecutionDataStore> stores = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            stores.add(synthetic.executionData(0.2 * i, random));
+        }
+        //Same probes as the first store, shares its analysis
+        stores.add(synthetic.executionData(0.0, random));
+        final List<IBundleCoverage> bundles = StructureCache.analyze(
+                Collections.singletonList(classesDir), ClassFilter.ALL, stores,
+                Arrays.asList("s0", "s1", "s2", "s3", "s4"));
+        assertThat(bundles.size(), is(5));
+        for (int i = 0; i < stores.size(); i++) {
+            final IBundleCoverage expected = analyze(stores.get(i));
+            assertThat(bundles.get(i).getName(), is("s" + i));
+            assertThat(bundles.get(i).getInstructionCounter().getCoveredCount(),
+                       equalTo(expected.getInstructionCounter().getCoveredCount()));
+            assertThat(bundles.get(i).getMethodCounter().getCoveredCount(),
+                       equalTo(expected.getMethodCounter().getCoveredCount()));
+            assertThat(bundles.get(i).getClassCounter().getTotalCount(), is(50));
+        }
+    }
+
+    private void addClass(final ZipOutputStream zip, final String prefix, final String name) throws IOException {
+        zip.putNextEntry(new ZipEntry(prefix + name + ".class"));
+        zip.write(Files.readAllBytes(new File(classesDir, name + ".class").toPath()));
+    }
+
+    private IBundleCoverage analyze(final ExecutionDataStore store) throws IOException {
+        final CoverageBuilder builder = new CoverageBuilder();
+        new Analyzer(store, builder).analyzeAll(classesDir);
+        return builder.getBundle("expected");
+    }
+}
@@ -0,0 +1,103 @@
+package com.github.nbs403.jacoco.data;
+
+import com.github.nbs403.jacoco.agent.AgentConnection;
+import com.github.nbs403.jacoco.agent.AgentEndpoint;
+import com.github.nbs403.jacoco.agent.AgentGroup;
+import com.github.nbs403.jacoco.agent.AgentSimulator;
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.SessionInfoStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class DumpPipelineTest {
+
+    private File workDir;
+    private AgentSimulator first;
+    private AgentSimulator second;
+    private List<AgentEndpoint> agents;
+
+    @BeforeEach
+    private void init() throws IOException {
+        workDir = Files.createTempDirectory("jacocopipeline").toFile();
+        workDir.deleteOnExit();
+        first = new AgentSimulator();
+        second = new AgentSimulator();
+        first.getExecutionData().put(new ExecutionData(1, "a/A", new boolean[]{true, false}));
+        second.getExecutionData().put(new ExecutionData(1, "a/A", new boolean[]{false, true}));
+        second.getExecutionData().put(new ExecutionData(2, "b/B", new boolean[]{true}));
+        agents = Arrays.asList(new AgentEndpoint(first.getHost(), first.getPort()),
+                               new AgentEndpoint(second.getHost(), second.getPort()));
+    }
+
+    @AfterEach
+    private void cleanup() throws IOException {
+        AgentConnection.closeAll();
+        first.close();
+        second.close();
+    }
+
+    /**
+     * The executed classes dumped by all agents are written to the .exec file, kept and merged into the target
+     *
+     * @throws IOException IOException
+     */
+    @Test
+    public void teesDumpToFileAndTarget() throws IOException {
+        final File execFile = new File(workDir, "test/test.exec");
+        final ExecutionDataStore scenario = new ExecutionDataStore();
+        scenario.put(new ExecutionData(2, "b/B", new boolean[]{false}));
+        final SessionInfoStore scenarioSessions = new SessionInfoStore();
+        try (DumpPipeline pipeline = new DumpPipeline(execFile, scenarioSessions,
+                                                      new ExecutionDataMerger(scenario))) {
+            AgentGroup.dump(agents, true, pipeline, pipeline);
+            pipeline.visitClassExecution(new ExecutionData(3, "c/C", new boolean[]{false, false}));
+            pipeline.commit();
+
+            assertThat(pipeline.getClassCount(), is(4));
+            assertThat(pipeline.getByteCount(), is(execFile.length()));
+            assertThat(pipeline.getExecutionDataStore().get(1).getProbes(), equalTo(new boolean[]{true, true}));
+            assertThat(pipeline.getExecutionDataStore().get(3), is(nullValue()));
+            assertThat(pipeline.getSessionInfoStore().getInfos().size(), is(2));
+        }
+        assertThat(scenario.get(1).getProbes(), equalTo(new boolean[]{true, true}));
+        assertThat(scenario.get(2).getProbes(), equalTo(new boolean[]{true}));
+        assertThat(scenario.get(3), is(nullValue()));
+        assertThat(scenarioSessions.getInfos().size(), is(2));
+
+        final ExecutionDataStore written = new ExecutionDataStore();
+        ExecFiles.read(execFile, new SessionInfoStore(), written);
+        assertThat(written.get(1).getProbes(), equalTo(new boolean[]{true, true}));
+        assertThat(written.get(2).getProbes(), equalTo(new boolean[]{true}));
+    }
+
+    /**
+     * A dump that is not committed leaves the previous .exec file in place and ignores later data
+     *
+     * @throws IOException IOException
+     */
+    @Test
+    public void discardsUncommittedDump() throws IOException {
+        final File execFile = new File(workDir, "aborted.exec");
+        final DumpPipeline pipeline = new DumpPipeline(execFile, null, null);
+        pipeline.visitClassExecution(new ExecutionData(1, "a/A", new boolean[]{true}));
+        pipeline.close();
+        pipeline.visitClassExecution(new ExecutionData(2, "b/B", new boolean[]{true}));
+
+        assertThat(execFile.exists(), is(false));
+        assertThat(workDir.list().length, is(0));
+        assertThat(pipeline.getExecutionDataStore().get(2), is(nullValue()));
+    }
+}
@@ -0,0 +1,79 @@
+package com.github.nbs403.jacoco.data;
+
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ExecutionDataMergerTest {
+
+    /**
+     * Merging covers the union of both stores and counts new classes and newly covered probes
+     */
+    @Test
+    public void mergesUnionOfClasses() {
+        final ExecutionDataStore target = new ExecutionDataStore();
+        target.put(new ExecutionData(1, "a/A", new boolean[]{true, false, false}));
+        final ExecutionDataStore other = new ExecutionDataStore();
+        other.put(new ExecutionData(1, "a/A", new boolean[]{true, true, false}));
+        other.put(new ExecutionData(2, "b/B", new boolean[]{false, true}));
+
+        final ExecutionDataMerger merger = new ExecutionDataMerger(target);
+        merger.merge(other);
+
+        assertThat(target.get(1).getProbes(), equalTo(new boolean[]{true, true, false}));
+        assertThat(target.get(2).getProbes(), equalTo(new boolean[]{false, true}));
+        assertThat(merger.getNewClassCount(), is(1));
+        assertThat(merger.getNewlyCoveredProbeCount(), is(2L));
+
+        merger.resetCounters();
+        merger.merge(other);
+        assertThat(merger.getNewlyCoveredProbeCount(), is(0L));
+        other.get(2).getProbes()[0] = true;
+        assertThat("Target must not share probe arrays with merged stores", target.get(2).getProbes()[0], is(false));
+    }
+
+    /**
+     * Bitset merge gives the same probes as Jacoco's own merge, across word boundaries
+     */
+    @Test
+    public void matchesExecutionDataMerge() {
+        final Random random = new Random(7);
+        final ExecutionDataStore target = new ExecutionDataStore();
+        final ExecutionDataStore expected = new ExecutionDataStore();
+        final ExecutionDataMerger merger = new ExecutionDataMerger(target);
+        for (int round = 0; round < 20; round++) {
+            final ExecutionDataStore dump = new ExecutionDataStore();
+            for (int id = 0; id < 200; id++) {
+                final boolean[] probes = new boolean[id + 1];
+                for (int p = 0; p < probes.length; p++) {
+                    probes[p] = random.nextInt(50) == 0;
+                }
+                dump.put(new ExecutionData(id, "c/C" + id, probes));
+                expected.get((long) id, "c/C" + id, probes.length).merge(new ExecutionData(id, "c/C" + id, probes));
+            }
+            merger.merge(dump);
+        }
+        for (final ExecutionData data : expected.getContents()) {
+            assertThat(target.get(data.getId()).getProbes(), equalTo(data.getProbes()));
+        }
+    }
+
+    /**
+     * Merging a class with the same id but a different probe count is an error, as with Jacoco's merge
+     */
+    @Test
+    public void rejectsIncompatibleClasses() {
+        final ExecutionDataStore target = new ExecutionDataStore();
+        target.put(new ExecutionData(1, "a/A", new boolean[3]));
+        final ExecutionDataStore other = new ExecutionDataStore();
+        other.put(new ExecutionData(1, "a/A", new boolean[4]));
+        assertThrows(IllegalStateException.class, () -> new ExecutionDataMerger(target).merge(other));
+    }
+}
@@ -0,0 +1,133 @@
+package com.github.nbs403.jacoco.data;
+
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.SessionInfo;
+import org.jacoco.core.data.SessionInfoStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class ProbeDeltaStoreTest {
+
+    private File storeFile;
+
+    @BeforeEach
+    private void init() throws IOException {
+        final File directory = Files.createTempDirectory("jacocoprobes").toFile();
+        directory.deleteOnExit();
+        storeFile = new File(directory, "tests.probes");
+        storeFile.deleteOnExit();
+    }
+
+    /**
+     * Rebuilding tests gives the union of their probes, classes not hit by any test are left out
+     *
+     * @throws IOException IOException
+     */
+    @Test
+    public void rebuildsUnionOfTests() throws IOException {
+        final boolean[] wide = new boolean[130];
+        wide[129] = true;
+        try (final ProbeDeltaStore store = new ProbeDeltaStore(storeFile)) {
+            store.append("first", "", sessions("s1"),
+                         data(new ExecutionData(1, "a/A", new boolean[]{true, false, false}),
+                              new ExecutionData(2, "b/B", new boolean[]{false, false}),
+                              new ExecutionData(3, "c/C", wide)));
+            store.append("second", "scenario", sessions("s2"),
+                         data(new ExecutionData(1, "a/A", new boolean[]{false, false, true})));
+
+            final ExecutionDataStore merged = store.rebuild("first", "second");
+            assertThat(merged.get(1).getProbes(), equalTo(new boolean[]{true, false, true}));
+            assertThat(merged.get(2), is(nullValue()));
+            assertThat(merged.get(3).getProbes(), equalTo(wide));
+            assertThat(store.rebuild("second").get(3), is(nullValue()));
+            assertThat(store.getTests("scenario"), contains("second"));
+            assertThat(store.getClassCount(), is(2));
+        }
+    }
+
+    /**
+     * Reopening a store rebuilds its indexes, and an incomplete record at the end of the file is dropped
+     *
+     * @throws IOException IOException
+     */
+    @Test
+    public void reopensAndTruncatesIncompleteRecord() throws IOException {
+        final long validSize;
+        try (final ProbeDeltaStore store = new ProbeDeltaStore(storeFile)) {
+            store.append("first", "", sessions("s1"), data(new ExecutionData(1, "a/A", new boolean[]{true})));
+            validSize = store.size();
+            store.append("second", "", sessions("s2"), data(new ExecutionData(1, "a/A", new boolean[]{true})));
+        }
+        try (final RandomAccessFile torn = new RandomAccessFile(storeFile, "rw")) {
+            torn.setLength(torn.length() - 3);
+        }
+        try (final ProbeDeltaStore store = new ProbeDeltaStore(storeFile)) {
+            assertThat(store.size(), is(validSize));
+            assertThat(store.getTests(), contains("first"));
+            final SessionInfoStore sessionInfoStore = new SessionInfoStore();
+            final ExecutionDataStore executionDataStore = new ExecutionDataStore();
+            store.read(Arrays.asList("first"), sessionInfoStore, executionDataStore);
+            assertThat(sessionInfoStore.getInfos().get(0).getId(), is("s1"));
+            assertThat(executionDataStore.get(1).getProbes(), equalTo(new boolean[]{true}));
+
+            store.append("third", "", sessions("s3"), data(new ExecutionData(1, "a/A", new boolean[]{true})));
+            assertThat(store.getTests(), contains("first", "third"));
+            assertThat(store.getClassCount(), is(1));
+        }
+    }
+
+    /**
+     * A test appended again in a later run replaces its coverage of the earlier run, records of the same run are merged
+     *
+     * @throws IOException IOException
+     */
+    @Test
+    public void rebuildsLatestRunOnly() throws IOException {
+        try (final ProbeDeltaStore store = new ProbeDeltaStore(storeFile)) {
+            store.append("A#test", "", sessions("s1"), data(new ExecutionData(1, "a/A", new boolean[]{true, false})));
+            store.append("B#test", "", sessions("s1"), data(new ExecutionData(1, "a/A", new boolean[]{false, true})));
+        }
+        try (final ProbeDeltaStore store = new ProbeDeltaStore(storeFile)) {
+            store.append("A#test", "", sessions("s2"), data(new ExecutionData(1, "a/A", new boolean[]{false, true})));
+            store.append("A#test", "", sessions("s3"), data(new ExecutionData(2, "b/B", new boolean[]{true})));
+            assertThat(store.rebuild("A#test").get(1).getProbes(), equalTo(new boolean[]{false, true}));
+        }
+        try (final ProbeDeltaStore store = new ProbeDeltaStore(storeFile)) {
+            final SessionInfoStore sessionInfoStore = new SessionInfoStore();
+            final ExecutionDataStore executionDataStore = new ExecutionDataStore();
+            store.read(Arrays.asList("A#test"), sessionInfoStore, executionDataStore);
+            assertThat(executionDataStore.get(1).getProbes(), equalTo(new boolean[]{false, true}));
+            assertThat(executionDataStore.get(2).getProbes(), equalTo(new boolean[]{true}));
+            assertThat(sessionInfoStore.getInfos().size(), is(2));
+            assertThat(store.rebuild("B#test").get(1).getProbes(), equalTo(new boolean[]{false, true}));
+            assertThat(store.getTests(), contains("A#test", "B#test"));
+        }
+    }
+
+    private static SessionInfoStore sessions(final String id) {
+        final SessionInfoStore sessionInfoStore = new SessionInfoStore();
+        sessionInfoStore.visitSessionInfo(new SessionInfo(id, 1L, 2L));
+        return sessionInfoStore;
+    }
+
+    private static ExecutionDataStore data(final ExecutionData... contents) {
+        final ExecutionDataStore executionDataStore = new ExecutionDataStore();
+        for (final ExecutionData data : contents) {
+            executionDataStore.put(data);
+        }
+        return executionDataStore;
+    }
+}
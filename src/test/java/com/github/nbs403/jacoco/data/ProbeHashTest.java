@@ -0,0 +1,35 @@
+package com.github.nbs403.jacoco.data;
+
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+public class ProbeHashTest {
+
+    /**
+     * Dumps with the same hit probes hash the same, whatever their class order and classes without hits
+     */
+    @Test
+    public void hashesHitProbesOnly() {
+        final ExecutionDataStore first = new ExecutionDataStore();
+        first.put(new ExecutionData(1, "a/A", new boolean[]{true, false, true}));
+        first.put(new ExecutionData(2, "b/B", new boolean[]{false, true}));
+        final ExecutionDataStore second = new ExecutionDataStore();
+        second.put(new ExecutionData(3, "c/C", new boolean[]{false}));
+        second.put(new ExecutionData(2, "b/B", new boolean[]{false, true}));
+        second.put(new ExecutionData(1, "a/A", new boolean[]{true, false, true}));
+
+        final String hash = ProbeHash.of(first);
+        assertThat(hash.length(), is(32));
+        assertThat(ProbeHash.of(second), equalTo(hash));
+        assertThat(ProbeHash.of(first, "XML"), not(equalTo(hash)));
+
+        second.get(1).getProbes()[1] = true;
+        assertThat(ProbeHash.of(second), not(equalTo(hash)));
+    }
+}
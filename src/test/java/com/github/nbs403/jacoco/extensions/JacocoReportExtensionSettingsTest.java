@@ -0,0 +1,43 @@
+package com.github.nbs403.jacoco.extensions;
+
+import com.github.nbs403.jacoco.utils.Constants;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class JacocoReportExtensionSettingsTest {
+
+    @AfterEach
+    private void cleanup() {
+        System.getProperties().remove(Constants.JACOCO_HOST);
+        System.getProperties().remove(Constants.JACOCO_CAPTURE_MODE);
+        System.getProperties().remove(Constants.JACOCO_TEST_IMPACT);
+        System.getProperties().remove(Constants.JACOCO_PROBE_STORE);
+    }
+
+    @BeforeEach
+    private void init() {
+        System.setProperty(Constants.JACOCO_HOST, "");
+        System.setProperty(Constants.JACOCO_CAPTURE_MODE, "differential");
+    }
+
+    /**
+     * Differential dumps only hold the probes a test set first, test selection must not be built from them
+     */
+    @Test
+    public void rejectsTestImpactInDifferentialMode() {
+        System.setProperty(Constants.JACOCO_TEST_IMPACT, "true");
+        assertThrows(IllegalArgumentException.class, JacocoReportExtension::new);
+    }
+
+    /**
+     * Differential dumps only hold the probes a test set first, they must not be stored as the test's probes
+     */
+    @Test
+    public void rejectsProbeStoreInDifferentialMode() {
+        System.setProperty(Constants.JACOCO_PROBE_STORE, "true");
+        assertThrows(IllegalArgumentException.class, JacocoReportExtension::new);
+    }
+}
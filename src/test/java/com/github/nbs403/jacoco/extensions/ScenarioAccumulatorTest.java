@@ -0,0 +1,82 @@
+package com.github.nbs403.jacoco.extensions;
+
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.SessionInfoStore;
+import org.jacoco.core.tools.ExecFileLoader;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class ScenarioAccumulatorTest {
+
+    /**
+     * merged.exec is only written at checkpoints and on close, and holds the union of all merged tests
+     *
+     * @throws IOException IOException
+     */
+    @Test
+    public void writesMergedExecAtCheckpointsAndClose() throws IOException {
+        final File reportDir = Files.createTempDirectory("jacocoscenario").toFile();
+        reportDir.deleteOnExit();
+        final File mergedExecFile = new File(reportDir, "merged.exec");
+        final ScenarioAccumulator accumulator = new ScenarioAccumulator(mergedExecFile, 2);
+
+        accumulator.add(store(new ExecutionData(1, "a/A", new boolean[]{true, false})), new SessionInfoStore());
+        assertThat(mergedExecFile.exists(), is(false));
+        accumulator.add(store(new ExecutionData(1, "a/A", new boolean[]{false, true})), new SessionInfoStore());
+        assertThat(mergedExecFile.exists(), is(true));
+        accumulator.add(store(new ExecutionData(2, "b/B", new boolean[]{true})), new SessionInfoStore());
+        assertThat(load(mergedExecFile).get(2), is((ExecutionData) null));
+
+        accumulator.close();
+        final ExecutionDataStore merged = load(mergedExecFile);
+        assertThat(merged.get(1).getProbes()[0] && merged.get(1).getProbes()[1], is(true));
+        assertThat(merged.get(2).getProbes()[0], is(true));
+        assertThat(reportDir.list().length, is(1));
+    }
+
+    /**
+     * Only tests covering new probes are reported as new coverage, once, and dumps already covered are detected
+     *
+     * @throws IOException IOException
+     */
+    @Test
+    public void tracksNewCoverage() throws IOException {
+        final File reportDir = Files.createTempDirectory("jacocoscenario").toFile();
+        reportDir.deleteOnExit();
+        final ScenarioAccumulator accumulator = new ScenarioAccumulator(new File(reportDir, "merged.exec"), 0);
+        assertThat("A scenario not reported yet has new coverage", accumulator.takeNewCoverage(), is(true));
+
+        accumulator.add(store(new ExecutionData(1, "a/A", new boolean[]{true, false})), new SessionInfoStore());
+        assertThat(accumulator.takeNewCoverage(), is(true));
+        assertThat(accumulator.takeNewCoverage(), is(false));
+
+        assertThat(accumulator.covers(store(new ExecutionData(1, "a/A", new boolean[]{true, false}))), is(true));
+        assertThat(accumulator.covers(store(new ExecutionData(2, "b/B", new boolean[]{false}))), is(true));
+        assertThat(accumulator.covers(store(new ExecutionData(1, "a/A", new boolean[]{false, true}))), is(false));
+        assertThat(accumulator.covers(store(new ExecutionData(2, "b/B", new boolean[]{true}))), is(false));
+
+        accumulator.add(store(new ExecutionData(1, "a/A", new boolean[]{true, false})), new SessionInfoStore());
+        assertThat(accumulator.takeNewCoverage(), is(false));
+        accumulator.add(store(new ExecutionData(1, "a/A", new boolean[]{false, true})), new SessionInfoStore());
+        assertThat(accumulator.takeNewCoverage(), is(true));
+    }
+
+    private static ExecutionDataStore store(final ExecutionData data) {
+        final ExecutionDataStore store = new ExecutionDataStore();
+        store.put(data);
+        return store;
+    }
+
+    private static ExecutionDataStore load(final File file) throws IOException {
+        final ExecFileLoader loader = new ExecFileLoader();
+        loader.load(file);
+        return loader.getExecutionDataStore();
+    }
+}
@@ -0,0 +1,115 @@
+package com.github.nbs403.jacoco.extensions;
+
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.internal.data.CRC64;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates class files with a known probe layout, so tests can build matching execution data without a live agent.
+ * Every generated method is straight line code with a single return, which Jacoco instruments with exactly one probe:
+ * a class with n methods has n + 1 probes, the extra one being its constructor.
+ */
+public class SyntheticClasses {
+
+    private final List<SyntheticClass> classes = new ArrayList<>();
+
+    /**
+     * Writes classCount classes with methodsPerClass methods each under directory
+     *
+     * @param directory       - root of generated class files
+     * @param classCount      - number of classes to generate
+     * @param methodsPerClass - number of methods, besides the constructor, per class
+     * @return generated classes
+     * @throws IOException if class files cannot be written
+     */
+    public static SyntheticClasses generate(final File directory, final int classCount, final int methodsPerClass)
+            throws IOException {
+        final SyntheticClasses synthetic = new SyntheticClasses();
+        for (int i = 0; i < classCount; i++) {
+            final String name = String.format("synthetic/p%d/Class%d", i % 100, i);
+            final byte[] bytes = classBytes(name, methodsPerClass);
+            final File classFile = new File(directory, name + ".class");
+            Files.createDirectories(classFile.getParentFile().toPath());
+            Files.write(classFile.toPath(), bytes);
+            synthetic.classes.add(new SyntheticClass(CRC64.classId(bytes), name, methodsPerClass + 1));
+        }
+        return synthetic;
+    }
+
+    public static byte[] classBytes(final String name, final int methodCount) {
+        final ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, "java/lang/Object", null);
+        writer.visitSource(name.substring(name.lastIndexOf('/') + 1) + ".java", null);
+        final MethodVisitor constructor = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        constructor.visitCode();
+        constructor.visitLineNumber(1, label(constructor));
+        constructor.visitVarInsn(Opcodes.ALOAD, 0);
+        constructor.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        constructor.visitInsn(Opcodes.RETURN);
+        constructor.visitMaxs(0, 0);
+        constructor.visitEnd();
+        for (int m = 0; m < methodCount; m++) {
+            final MethodVisitor method = writer.visitMethod(Opcodes.ACC_PUBLIC, "method" + m, "()I", null, null);
+            method.visitCode();
+            method.visitLineNumber(m + 2, label(method));
+            method.visitLdcInsn(m);
+            method.visitInsn(Opcodes.IRETURN);
+            method.visitMaxs(0, 0);
+            method.visitEnd();
+        }
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static Label label(final MethodVisitor method) {
+        final Label label = new Label();
+        method.visitLabel(label);
+        return label;
+    }
+
+    public List<SyntheticClass> getClasses() {
+        return classes;
+    }
+
+    /**
+     * Builds execution data for the generated classes
+     *
+     * @param density - probability of each probe being hit
+     * @param random  - source of probe hits
+     * @return execution data with an entry for every generated class
+     */
+    public ExecutionDataStore executionData(final double density, final Random random) {
+        final ExecutionDataStore store = new ExecutionDataStore();
+        for (final SyntheticClass synthetic : classes) {
+            final boolean[] probes = new boolean[synthetic.probeCount];
+            for (int p = 0; p < probes.length; p++) {
+                probes[p] = random.nextDouble() < density;
+            }
+            store.put(new ExecutionData(synthetic.id, synthetic.name, probes));
+        }
+        return store;
+    }
+
+    public static final class SyntheticClass {
+        public final long id;
+        public final String name;
+        public final int probeCount;
+
+        SyntheticClass(final long id, final String name, final int probeCount) {
+            this.id = id;
+            this.name = name;
+            this.probeCount = probeCount;
+        }
+    }
+}
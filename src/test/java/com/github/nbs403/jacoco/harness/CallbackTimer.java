@@ -0,0 +1,55 @@
+package com.github.nbs403.jacoco.harness;
+
+import org.junit.jupiter.api.extension.AfterTestExecutionCallback;
+import org.junit.jupiter.api.extension.BeforeTestExecutionCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+
+import java.util.Arrays;
+
+/**
+ * Times every test from before the first beforeTestExecution callback to after the last afterTestExecution callback,
+ * i.e. the callbacks of the extensions registered after this one and the test itself
+ */
+public class CallbackTimer implements BeforeTestExecutionCallback, AfterTestExecutionCallback {
+
+    private static final ExtensionContext.Namespace NAMESPACE = ExtensionContext.Namespace.create(CallbackTimer.class);
+    private static final String STARTKEY = "start";
+    private static long[] durations = new long[1024];
+    private static int count;
+
+    /**
+     * @return durations in nanoseconds recorded so far, sorted
+     */
+    static synchronized long[] sortedDurations() {
+        final long[] sorted = Arrays.copyOf(durations, count);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Forgets the recorded durations
+     */
+    static synchronized void reset() {
+        count = 0;
+    }
+
+    private static synchronized void record(final long nanos) {
+        if (count == durations.length) {
+            durations = Arrays.copyOf(durations, count * 2);
+        }
+        durations[count++] = nanos;
+    }
+
+    @Override
+    public void beforeTestExecution(final ExtensionContext context) {
+        context.getStore(NAMESPACE).put(STARTKEY, System.nanoTime());
+    }
+
+    @Override
+    public void afterTestExecution(final ExtensionContext context) {
+        final Long start = context.getStore(NAMESPACE).remove(STARTKEY, Long.class);
+        if (start != null) {
+            record(System.nanoTime() - start);
+        }
+    }
+}
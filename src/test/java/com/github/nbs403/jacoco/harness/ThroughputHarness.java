@@ -0,0 +1,118 @@
+package com.github.nbs403.jacoco.harness;
+
+import com.github.nbs403.jacoco.agent.AgentSimulator;
+import com.github.nbs403.jacoco.extensions.SyntheticClasses;
+import com.github.nbs403.jacoco.utils.Constants;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.platform.launcher.LauncherDiscoveryRequest;
+import org.junit.platform.launcher.core.LauncherDiscoveryRequestBuilder;
+import org.junit.platform.launcher.core.LauncherFactory;
+import org.junit.platform.launcher.listeners.SummaryGeneratingListener;
+import org.junit.platform.launcher.listeners.TestExecutionSummary;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.StringJoiner;
+
+import static org.junit.platform.engine.discovery.DiscoverySelectors.selectClass;
+
+/**
+ * End to end throughput harness: starts simulated agents holding synthetic classes, runs {@link ThroughputTests} -
+ * thousands of empty coverage enabled tests - against them through the JUnit launcher, then reports tests per second
+ * and the p50, p99 and max latency of the extension's callbacks per test.
+ * Results are printed and written to build/reports/throughput/results.json. Settings are system properties:
+ * <ul>
+ * <li>harness.tests, harness.scenarioTests - number of single and scenario tests, 2000 and 1000</li>
+ * <li>harness.agents - number of simulated agents, 1</li>
+ * <li>harness.classes, harness.methods - synthetic classes and methods per class, 500 and 4</li>
+ * <li>harness.density - probability of every probe to be hit by a test, 0.02</li>
+ * <li>harness.latency - agent answer delay in milliseconds, 0</li>
+ * <li>harness.failureRate - probability of an agent command to fail, 0</li>
+ * </ul>
+ * JACOCO_* settings are passed on to the extension, reports default to JSON only and metrics are on.
+ */
+public final class ThroughputHarness {
+
+    static final String TESTS = "harness.tests";
+    static final String SCENARIO_TESTS = "harness.scenarioTests";
+    private static final String RESULTSFILE = "build/reports/throughput/results.json";
+
+    private ThroughputHarness() {
+    }
+
+    public static void main(final String[] args) throws IOException {
+        Logger.getRootLogger().setLevel(Level.WARN);
+        final File classesDir = Files.createTempDirectory("jacocoharness").toFile();
+        final SyntheticClasses synthetic = SyntheticClasses.generate(
+                classesDir, Integer.getInteger("harness.classes", 500), Integer.getInteger("harness.methods", 4));
+        final List<AgentSimulator> agents = new ArrayList<>();
+        final StringJoiner endpoints = new StringJoiner(",");
+        try {
+            for (int i = 0; i < Integer.getInteger("harness.agents", 1); i++) {
+                final AgentSimulator agent = new AgentSimulator().withClasses(synthetic)
+                        .withHitDensity(Double.parseDouble(System.getProperty("harness.density", "0.02")))
+                        .withLatency(Long.getLong("harness.latency", 0L))
+                        .withFailureRate(Double.parseDouble(System.getProperty("harness.failureRate", "0")));
+                agents.add(agent);
+                endpoints.add(agent.getHost() + ":" + agent.getPort());
+            }
+            System.setProperty(Constants.JACOCO_AGENTS, endpoints.toString());
+            System.setProperty(Constants.JACOCO_CLASSES_DIR, classesDir.getAbsolutePath());
+            setIfAbsent(Constants.JACOCO_REPORT_FORMATS, "json");
+            setIfAbsent(Constants.JACOCO_TEST_REPORT_FORMATS, "json");
+            setIfAbsent(Constants.JACOCO_METRICS, "true");
+            run();
+        } finally {
+            for (final AgentSimulator agent : agents) {
+                agent.close();
+            }
+        }
+    }
+
+    private static void run() throws IOException {
+        final LauncherDiscoveryRequest request =
+                LauncherDiscoveryRequestBuilder.request().selectors(selectClass(ThroughputTests.class)).build();
+        final SummaryGeneratingListener listener = new SummaryGeneratingListener();
+        CallbackTimer.reset();
+        final long start = System.nanoTime();
+        LauncherFactory.create().execute(request, listener);
+        final double seconds = (System.nanoTime() - start) / 1e9;
+
+        final TestExecutionSummary summary = listener.getSummary();
+        final long tests = summary.getTestsStartedCount();
+        final long[] durations = CallbackTimer.sortedDurations();
+        final String results = String.format(
+                Locale.ROOT, "{\"tests\":%d,\"failed\":%d,\"seconds\":%.3f,\"testsPerSecond\":%.1f,"
+                        + "\"callbackMillis\":{\"p50\":%.3f,\"p99\":%.3f,\"max\":%.3f}}",
+                tests, summary.getTestsFailedCount(), seconds, tests / seconds, percentile(durations, 50),
+                percentile(durations, 99), percentile(durations, 100));
+        System.out.println(results);
+        final File resultsFile = new File(RESULTSFILE);
+        Files.createDirectories(resultsFile.getAbsoluteFile().getParentFile().toPath());
+        Files.write(resultsFile.toPath(), (results + "\n").getBytes(StandardCharsets.UTF_8));
+        if (summary.getTestsFailedCount() > 0) {
+            summary.printFailuresTo(new PrintWriter(System.out, true), 5);
+        }
+    }
+
+    private static double percentile(final long[] sorted, final int percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        final int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    private static void setIfAbsent(final String key, final String value) {
+        if (System.getenv(key) == null && System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+}
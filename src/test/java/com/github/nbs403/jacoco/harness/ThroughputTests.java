@@ -0,0 +1,42 @@
+package com.github.nbs403.jacoco.harness;
+
+import com.github.nbs403.jacoco.annotations.JacocoReport;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.stream.IntStream;
+
+/**
+ * Empty coverage enabled tests run by {@link ThroughputHarness}, their duration is the extension's overhead.
+ * Tagged so the default test task leaves them out, they need the simulated agents the harness starts.
+ * The callback timer is registered on the class, before the method level JacocoReport extension, so it times the
+ * extension's callbacks from the outside
+ */
+@Tag("throughput")
+@ExtendWith(CallbackTimer.class)
+class ThroughputTests {
+
+    static IntStream tests() {
+        return IntStream.rangeClosed(1, Integer.getInteger(ThroughputHarness.TESTS, 2000));
+    }
+
+    static IntStream scenarioTests() {
+        return IntStream.rangeClosed(1, Integer.getInteger(ThroughputHarness.SCENARIO_TESTS, 1000));
+    }
+
+    @ParameterizedTest(name = "test {0}")
+    @MethodSource("tests")
+    @JacocoReport
+    void test(final int index) {
+        //Coverage is simulated by the agents
+    }
+
+    @ParameterizedTest(name = "scenario test {0}")
+    @MethodSource("scenarioTests")
+    @JacocoReport(scenario = "throughput")
+    void scenarioTest(final int index) {
+        //Coverage is simulated by the agents
+    }
+}
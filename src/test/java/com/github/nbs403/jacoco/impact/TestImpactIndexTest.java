@@ -0,0 +1,124 @@
+package com.github.nbs403.jacoco.impact;
+
+import com.github.nbs403.jacoco.analysis.ClassFilter;
+import com.github.nbs403.jacoco.analysis.MethodProbeMap;
+import com.github.nbs403.jacoco.extensions.SyntheticClasses;
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.arrayContainingInAnyOrder;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+
+public class TestImpactIndexTest {
+
+    private static final String CLASS0 = "synthetic.p0.Class0";
+    private static final String CLASS1 = "synthetic.p1.Class1";
+
+    private File workDir;
+    private SyntheticClasses synthetic;
+    private MethodProbeMap methodProbeMap;
+
+    @BeforeEach
+    private void init() throws IOException {
+        workDir = Files.createTempDirectory("jacocoimpact").toFile();
+        workDir.deleteOnExit();
+        final File classesDir = new File(workDir, "classes");
+        synthetic = SyntheticClasses.generate(classesDir, 2, 2);
+        methodProbeMap = MethodProbeMap.forRoots(Collections.singletonList(classesDir), ClassFilter.ALL);
+    }
+
+    /**
+     * Queries resolve classes, nested in dotted form, and methods to the tests that executed them
+     *
+     * @throws IOException IOException
+     */
+    @Test
+    public void selectsTestsOfChangedClassesAndMethods() throws IOException {
+        final TestImpactIndex index = new TestImpactIndex();
+        //Probe 0 is the constructor, probe 1 method0 and probe 2 method1
+        index.record("A#a", "", hits(0, 1), methodProbeMap);
+        index.record("B#b", "Checkout", hits(0, 2, 1, 0), methodProbeMap);
+        index.record("C#c", "", hits(0, 1, 0, 2), methodProbeMap);
+
+        assertThat(index.getAffectedTests(Collections.singletonList(CLASS0)), contains("A#a", "B#b", "C#c"));
+        assertThat(index.getMinimalTests(Arrays.asList(CLASS0, CLASS1)), contains("B#b"));
+        assertThat(index.getMinimalTests(Arrays.asList(CLASS0 + "#method0", CLASS0 + "#method1")), contains("C#c"));
+        assertThat(index.getAffectedTests(Collections.singletonList(CLASS0 + "#method1()I")),
+                   containsInAnyOrder("B#b", "C#c"));
+        assertThat(index.getAffectedScenarios(Collections.singletonList("synthetic/p1/Class1")), contains("Checkout"));
+        assertThat(index.getUncovered(Arrays.asList(CLASS1 + "#method1", "synthetic.Missing")),
+                   contains(CLASS1 + "#method1", "synthetic.Missing"));
+    }
+
+    /**
+     * A new run replaces the entries of the tests it ran, the CLI reads the saved index
+     *
+     * @throws IOException IOException
+     */
+    @Test
+    public void mergesRunsAndSelectsFromCommandLine() throws IOException {
+        final File indexFile = new File(workDir, "test-impact.idx");
+        final TestImpactIndex first = new TestImpactIndex();
+        first.record("A#a", "", hits(0, 1), methodProbeMap);
+        first.record("C#c", "", hits(0, 1), methodProbeMap);
+        first.record("D#d", "", hits(0, 1), methodProbeMap);
+        first.save(indexFile);
+
+        final TestImpactIndex run = new TestImpactIndex();
+        run.record("A#a", "", hits(1, 1), methodProbeMap);
+        final TestImpactIndex merged = TestImpactIndex.load(indexFile);
+        merged.merge(run);
+        merged.save(indexFile);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ByteArrayOutputStream err = new ByteArrayOutputStream();
+        final int exitCode = TestImpactCli.run(
+                new String[]{"--index", indexFile.getPath(), "-"},
+                new BufferedReader(new StringReader(CLASS0 + "#method0\n" + CLASS1 + "#method1\n")),
+                new PrintStream(out, true, "UTF-8"), new PrintStream(err, true, "UTF-8"));
+
+        assertThat(exitCode, is(0));
+        assertThat("Every test executing a change is selected by default",
+                   new String(out.toByteArray(), StandardCharsets.UTF_8).trim().split("\\R"),
+                   arrayContainingInAnyOrder("C#c", "D#d"));
+        assertThat(new String(err.toByteArray(), StandardCharsets.UTF_8), containsString(CLASS1 + "#method1"));
+        assertThat(TestImpactIndex.load(indexFile).getTests(), containsInAnyOrder("A#a", "C#c", "D#d"));
+
+        final ByteArrayOutputStream minimal = new ByteArrayOutputStream();
+        assertThat(TestImpactCli.run(new String[]{"--index", indexFile.getPath(), "--minimal", CLASS0 + "#method0"},
+                                     new BufferedReader(new StringReader("")),
+                                     new PrintStream(minimal, true, "UTF-8"), new PrintStream(err, true, "UTF-8")),
+                   is(0));
+        assertThat(new String(minimal.toByteArray(), StandardCharsets.UTF_8).trim().split("\\R").length, is(1));
+    }
+
+    /**
+     * Execution data hitting the given probes, as pairs of class index and probe index
+     */
+    private ExecutionDataStore hits(final int... classAndProbe) {
+        final ExecutionDataStore store = new ExecutionDataStore();
+        for (int i = 0; i < classAndProbe.length; i += 2) {
+            final SyntheticClasses.SyntheticClass syntheticClass = synthetic.getClasses().get(classAndProbe[i]);
+            store.get(syntheticClass.id, syntheticClass.name, syntheticClass.probeCount)
+                 .getProbes()[classAndProbe[i + 1]] = true;
+        }
+        return store;
+    }
+}
@@ -0,0 +1,96 @@
+package com.github.nbs403.jacoco.metrics;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+
+public class CoverageMetricsTest {
+
+    private File summaryFile;
+
+    @BeforeEach
+    private void init() throws IOException {
+        final File workDir = Files.createTempDirectory("jacocometrics").toFile();
+        workDir.deleteOnExit();
+        summaryFile = new File(workDir, "coverage-metrics.json");
+        summaryFile.deleteOnExit();
+        CoverageMetrics.writeSummary(); //drops phases aggregated by other tests
+        CoverageMetrics.enableSummary(summaryFile);
+    }
+
+    @AfterEach
+    private void cleanup() {
+        CoverageMetrics.enableSummary(null);
+    }
+
+    /**
+     * Phases are aggregated per scenario of the thread's context and for the whole run
+     *
+     * @throws IOException IOException
+     */
+    @Test
+    public void summarizesPhasesPerScenario() throws IOException {
+        final CoverageMetrics.Scope scope = CoverageMetrics.Context.of("checkout", "test1").enter();
+        for (int i = 0; i < 3; i++) {
+            try (CoverageMetrics.Timer timer = CoverageMetrics.start(Phase.AGENT_DUMP)) {
+                timer.classes(10).bytes(100L);
+            }
+        }
+        final CoverageMetrics.Scope nested = CoverageMetrics.Context.of("", "test2").enter();
+        CoverageMetrics.start(Phase.REPORT).close();
+        nested.close();
+        try (CoverageMetrics.Timer timer = CoverageMetrics.start(Phase.SAVE)) {
+            timer.bytes(5L);
+        }
+        scope.close();
+        CoverageMetrics.writeSummary();
+
+        final String summary = new String(Files.readAllBytes(summaryFile.toPath()), StandardCharsets.UTF_8);
+        assertThat(summary, containsString("\"run\":{\"AGENT_DUMP\":{\"count\":3,"));
+        assertThat(summary, containsString("\"bytes\":300,\"classes\":30,"));
+        assertThat(summary, containsString("\"scenarios\":{\"\":{\"REPORT\":{\"count\":1,"));
+        assertThat(summary, containsString("\"checkout\":{\"AGENT_DUMP\":{\"count\":3,"));
+        assertThat(summary, containsString("\"SAVE\":{\"count\":1,"));
+        assertThat(summary, containsString("\"p99Ms\":"));
+    }
+
+    /**
+     * Phases timed by several threads, including threads that ended, are all collected by the summary
+     *
+     * @throws IOException          IOException
+     * @throws InterruptedException InterruptedException
+     */
+    @Test
+    public void collectsPhasesOfAllThreads() throws IOException, InterruptedException {
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            final Thread thread = new Thread(() -> {
+                for (int j = 0; j < 250; j++) {
+                    try (CoverageMetrics.Timer timer = CoverageMetrics.start(Phase.MERGE)) {
+                        timer.classes(1);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        CoverageMetrics.writeSummary();
+
+        final String summary = new String(Files.readAllBytes(summaryFile.toPath()), StandardCharsets.UTF_8);
+        assertThat(summary, containsString("\"run\":{\"MERGE\":{\"count\":1000,"));
+        assertThat(summary, containsString("\"classes\":1000,"));
+    }
+}
@@ -0,0 +1,70 @@
+package com.github.nbs403.jacoco.report;
+
+import com.github.nbs403.jacoco.analysis.StructureCache;
+import com.github.nbs403.jacoco.extensions.SyntheticClasses;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.SessionInfoStore;
+import org.jacoco.report.DirectorySourceFileLocator;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+public class IncrementalHtmlReportTest {
+
+    private static final String MARKER = "not rewritten";
+
+    /**
+     * Only pages of the package whose coverage changed, and the report index, are rewritten
+     *
+     * @throws IOException IOException
+     */
+    @Test
+    public void rewritesOnlyChangedPages() throws IOException {
+        final File workDir = Files.createTempDirectory("jacocoincremental").toFile();
+        workDir.deleteOnExit();
+        final File classesDir = new File(workDir, "classes");
+        final File reportDir = new File(workDir, "report");
+        final SyntheticClasses synthetic = SyntheticClasses.generate(classesDir, 3, 3);
+        final ExecutionDataStore store = synthetic.executionData(0.0, new Random(1));
+
+        render(classesDir, store, reportDir);
+        mark(reportDir, "index.html", "synthetic.p0/Class0.html", "synthetic.p0/index.html",
+             "synthetic.p1/Class1.html", "synthetic.p1/index.html");
+
+        store.get(synthetic.getClasses().get(0).id).getProbes()[1] = true;
+        render(classesDir, store, reportDir);
+
+        assertThat(marked(reportDir, "index.html"), is(false));
+        assertThat(marked(reportDir, "synthetic.p0/Class0.html"), is(false));
+        assertThat(marked(reportDir, "synthetic.p0/index.html"), is(false));
+        assertThat(marked(reportDir, "synthetic.p1/Class1.html"), is(true));
+        assertThat(marked(reportDir, "synthetic.p1/index.html"), is(true));
+        assertThat(new File(reportDir, "synthetic.p2/Class2.html").length(), is(not(0L)));
+    }
+
+    private static void render(final File classesDir, final ExecutionDataStore store, final File reportDir)
+            throws IOException {
+        IncrementalHtmlReport.render(StructureCache.forRoot(classesDir).analyze(store, "incremental"),
+                                     new SessionInfoStore(), store, reportDir,
+                                     new DirectorySourceFileLocator(classesDir, "utf-8", 4));
+    }
+
+    private static void mark(final File reportDir, final String... pages) throws IOException {
+        for (final String page : pages) {
+            Files.write(new File(reportDir, page).toPath(), MARKER.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static boolean marked(final File reportDir, final String page) throws IOException {
+        return new String(Files.readAllBytes(new File(reportDir, page).toPath()), StandardCharsets.UTF_8)
+                .equals(MARKER);
+    }
+}
@@ -0,0 +1,130 @@
+package com.github.nbs403.jacoco.report;
+
+import com.github.nbs403.jacoco.analysis.StructureCache;
+import com.github.nbs403.jacoco.annotations.ReportFormat;
+import com.github.nbs403.jacoco.extensions.SyntheticClasses;
+import org.jacoco.core.analysis.IBundleCoverage;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.SessionInfoStore;
+import org.jacoco.report.DirectorySourceFileLocator;
+import org.jacoco.report.IReportGroupVisitor;
+import org.jacoco.report.IReportVisitor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class MultiFormatReportTest {
+
+    private File workDir;
+    private IBundleCoverage bundleCoverage;
+    private ExecutionDataStore store;
+
+    @BeforeEach
+    private void init() throws IOException {
+        workDir = Files.createTempDirectory("jacocoformats").toFile();
+        workDir.deleteOnExit();
+        final File classesDir = new File(workDir, "classes");
+        final SyntheticClasses synthetic = SyntheticClasses.generate(classesDir, 1, 2);
+        store = new ExecutionDataStore();
+        final SyntheticClasses.SyntheticClass syntheticClass = synthetic.getClasses().get(0);
+        store.get(syntheticClass.id, syntheticClass.name, syntheticClass.probeCount).getProbes()[1] = true;
+        bundleCoverage = StructureCache.forRoot(classesDir).analyze(store, "formats");
+    }
+
+    /**
+     * Only the selected formats are written
+     *
+     * @throws IOException IOException
+     */
+    @Test
+    public void rendersSelectedFormats() throws IOException {
+        final File reportDir = new File(workDir, "report");
+        MultiFormatReport.render(EnumSet.of(ReportFormat.XML, ReportFormat.CSV, ReportFormat.JSON), false,
+                                 bundleCoverage, new SessionInfoStore(), store, reportDir,
+                                 new DirectorySourceFileLocator(workDir, "utf-8", 4));
+
+        assertThat(new File(reportDir, "index.html").exists(), is(false));
+        assertThat(read(new File(reportDir, MultiFormatReport.XML_FILE)), containsString("<report name=\"formats\">"));
+        assertThat(read(new File(reportDir, MultiFormatReport.CSV_FILE)), containsString("synthetic.p0,Class0"));
+        assertThat(read(new File(reportDir, MultiFormatReport.JSON_FILE)),
+                   containsString("{\"sessions\":0,\"children\":[{\"bundle\":\"formats\",\"counters\":"));
+        assertThat(MultiFormatReport.parse(" html, Json ", Collections.emptySet()),
+                   is(EnumSet.of(ReportFormat.HTML, ReportFormat.JSON)));
+        assertThat(MultiFormatReport.parse("", EnumSet.of(ReportFormat.HTML)).isEmpty(), is(true));
+    }
+
+    /**
+     * Groups and bundles nest as children of the JSON summary
+     *
+     * @throws IOException IOException
+     */
+    @Test
+    public void nestsGroupsInJsonSummary() throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final IReportVisitor visitor = new JsonSummaryFormatter().createVisitor(output);
+        visitor.visitInfo(Collections.emptyList(), Collections.emptyList());
+        final IReportGroupVisitor group = visitor.visitGroup("g\"1");
+        group.visitGroup("inner");
+        group.visitBundle(bundleCoverage, null);
+        visitor.visitBundle(bundleCoverage, null);
+        visitor.visitEnd();
+
+        final String json = new String(output.toByteArray(), StandardCharsets.UTF_8);
+        assertThat(json.replaceAll("\\{\"bundle\":\"formats\".*?\\}\\}\\]\\}", "B"),
+                   is("{\"sessions\":0,\"children\":[{\"group\":\"g\\\"1\",\"children\":["
+                      + "{\"group\":\"inner\",\"children\":[]},B]},B]}"));
+    }
+
+    /**
+     * The report files are closed when a visitor fails part way, checked on the open file descriptors where /proc is
+     * available
+     *
+     * @throws IOException IOException
+     */
+    @Test
+    public void closesFilesOfFailedRendering() throws IOException {
+        final File reportDir = new File(workDir, "report");
+        final Map<String, IBundleCoverage> groups = new LinkedHashMap<>();
+        groups.put("rendered", bundleCoverage);
+        groups.put("failing", (IBundleCoverage) Proxy.newProxyInstance(
+                IBundleCoverage.class.getClassLoader(), new Class<?>[]{IBundleCoverage.class}, (proxy, method, args) -> {
+                    throw new IllegalStateException("Broken bundle");
+                }));
+        assertThrows(IllegalStateException.class, () -> MultiFormatReport.renderGroups(
+                EnumSet.of(ReportFormat.XML, ReportFormat.CSV), groups, new SessionInfoStore(), store, reportDir,
+                new DirectorySourceFileLocator(workDir, "utf-8", 4)));
+
+        final File[] descriptors = new File("/proc/self/fd").listFiles();
+        assumeTrue(descriptors != null);
+        final String reportPath = reportDir.getCanonicalPath();
+        for (final File descriptor : descriptors) {
+            final String target;
+            try {
+                target = Files.readSymbolicLink(descriptor.toPath()).toString();
+            } catch (final IOException e) {
+                continue;
+            }
+            assertThat(target.startsWith(reportPath), is(false));
+        }
+    }
+
+    private static String read(final File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,83 @@
+package com.github.nbs403.jacoco.report;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+public class ReportRenderQueueTest {
+
+    /**
+     * Jobs waiting for the same directory are replaced by the latest one, and drain waits for all of them
+     *
+     * @throws InterruptedException InterruptedException
+     */
+    @Test
+    public void latestJobPerDirectoryIsRendered() throws InterruptedException {
+        final ReportRenderQueue queue = new ReportRenderQueue(1, 4);
+        final List<String> rendered = new CopyOnWriteArrayList<>();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        queue.submit(new File("blocker"), () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            rendered.add("blocker");
+        });
+        assertThat(started.await(5, TimeUnit.SECONDS), is(true));
+        queue.submit(new File("scenario"), () -> rendered.add("first"));
+        queue.submit(new File("scenario"), () -> rendered.add("second"));
+        queue.submit(new File("test"), () -> rendered.add("test"));
+        release.countDown();
+
+        assertThat(queue.drain(), is(0));
+        assertThat(rendered, contains("blocker", "second", "test"));
+        assertThat(queue.getActiveDirectoryCount(), is(0));
+    }
+
+    /**
+     * Directory locks are dropped once their last render task is done, however many directories were rendered
+     *
+     * @throws InterruptedException InterruptedException
+     */
+    @Test
+    public void dropsLocksOfRenderedDirectories() throws InterruptedException {
+        final ReportRenderQueue queue = new ReportRenderQueue(2, 8);
+        final CountDownLatch rendered = new CountDownLatch(500);
+        for (int i = 0; i < 500; i++) {
+            queue.submit(new File("test" + i), rendered::countDown);
+        }
+        assertThat(rendered.await(5, TimeUnit.SECONDS), is(true));
+        assertThat(queue.drain(), is(0));
+        assertThat(queue.getActiveDirectoryCount(), is(0));
+    }
+
+    /**
+     * Reports failing on the shared queue are counted when it is drained
+     */
+    @Test
+    public void countsFailedReportsOfSharedQueue() {
+        ReportRenderQueue.shared().submit(new File("failed0"), () -> {
+            throw new IOException("disk full");
+        });
+        ReportRenderQueue.shared().submit(new File("failed1"), () -> {
+            throw new IllegalStateException("broken class");
+        });
+        ReportRenderQueue.shared().submit(new File("rendered"), () -> {
+        });
+        assertThat(ReportRenderQueue.drainShared(), is(2));
+        assertThat(ReportRenderQueue.drainShared(), is(0));
+    }
+}
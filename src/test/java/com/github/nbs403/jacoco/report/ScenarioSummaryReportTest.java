@@ -0,0 +1,93 @@
+package com.github.nbs403.jacoco.report;
+
+import com.github.nbs403.jacoco.analysis.ClassFilter;
+import com.github.nbs403.jacoco.annotations.ReportFormat;
+import com.github.nbs403.jacoco.extensions.SyntheticClasses;
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.SessionInfoStore;
+import org.jacoco.report.DirectorySourceFileLocator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.EnumSet;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+
+public class ScenarioSummaryReportTest {
+
+    private File workDir;
+    private SyntheticClasses synthetic;
+
+    @BeforeEach
+    private void init() throws IOException {
+        workDir = Files.createTempDirectory("jacocosummary").toFile();
+        workDir.deleteOnExit();
+        synthetic = SyntheticClasses.generate(new File(workDir, "classes"), 2, 2);
+    }
+
+    /**
+     * Every scenario is a group of the report, followed by the union of all scenarios
+     *
+     * @throws IOException IOException
+     */
+    @Test
+    public void groupsScenariosAndTheirUnion() throws IOException {
+        final File reportDir = new File(workDir, "report");
+        final ScenarioSummaryReport report = new ScenarioSummaryReport(
+                reportDir, Collections.singletonList(new File(workDir, "classes")), ClassFilter.ALL,
+                EnumSet.of(ReportFormat.HTML, ReportFormat.JSON), new DirectorySourceFileLocator(workDir, "utf-8", 4));
+        report.add("Payments", new SessionInfoStore(), hit(synthetic.getClasses().get(0)));
+        report.add("Checkout", new SessionInfoStore(), hit(synthetic.getClasses().get(1)));
+        report.write();
+
+        final String summary = new String(Files.readAllBytes(new File(reportDir, MultiFormatReport.JSON_FILE).toPath()),
+                                          StandardCharsets.UTF_8);
+        assertThat(summary, containsString("{\"group\":\"Checkout\",\"children\":[{\"bundle\":\"Checkout\","));
+        assertThat(summary.indexOf("\"group\":\"Checkout\"") < summary.indexOf("\"group\":\"Payments\""), is(true));
+        //Each scenario covers one of the two classes, the union covers both
+        assertThat(summary, containsString("\"METHOD\":[1,5],\"CLASS\":[1,1]},\"packages\""));
+        final String union = summary.substring(summary.indexOf("{\"bundle\":\"" + ScenarioSummaryReport.ALL_SCENARIOS));
+        assertThat(union, containsString("\"METHOD\":[2,4],\"CLASS\":[2,0]},\"packages\""));
+        assertThat(new File(reportDir, "index.html").exists(), is(true));
+    }
+
+    /**
+     * A scenario named like the union group is renamed instead of replacing the union
+     *
+     * @throws IOException IOException
+     */
+    @Test
+    public void renamesScenarioClashingWithUnion() throws IOException {
+        final File reportDir = new File(workDir, "report");
+        final ScenarioSummaryReport report = new ScenarioSummaryReport(
+                reportDir, Collections.singletonList(new File(workDir, "classes")), ClassFilter.ALL,
+                EnumSet.of(ReportFormat.JSON), new DirectorySourceFileLocator(workDir, "utf-8", 4));
+        report.add(ScenarioSummaryReport.ALL_SCENARIOS, new SessionInfoStore(), hit(synthetic.getClasses().get(0)));
+        report.add("Checkout", new SessionInfoStore(), hit(synthetic.getClasses().get(1)));
+        report.write();
+
+        final String summary = new String(Files.readAllBytes(new File(reportDir, MultiFormatReport.JSON_FILE).toPath()),
+                                          StandardCharsets.UTF_8);
+        assertThat(summary, containsString("{\"group\":\"All Scenarios (scenario)\",\"children\":[{\"bundle\":"
+                                           + "\"All Scenarios (scenario)\","));
+        final String union = summary.substring(summary.indexOf("{\"bundle\":\"" + ScenarioSummaryReport.ALL_SCENARIOS
+                                                               + "\""));
+        assertThat(union, containsString("\"METHOD\":[2,4],\"CLASS\":[2,0]},\"packages\""));
+    }
+
+    private static ExecutionDataStore hit(final SyntheticClasses.SyntheticClass syntheticClass) {
+        final boolean[] probes = new boolean[syntheticClass.probeCount];
+        probes[0] = true;
+        final ExecutionDataStore store = new ExecutionDataStore();
+        store.put(new ExecutionData(syntheticClass.id, syntheticClass.name, probes));
+        return store;
+    }
+}
@@ -0,0 +1,112 @@
+package com.github.nbs403.jacoco.report;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class SourceCacheTest {
+
+    private File workDir;
+    private File sourcesDir;
+
+    @BeforeEach
+    private void init() throws IOException {
+        workDir = Files.createTempDirectory("jacocosources").toFile();
+        workDir.deleteOnExit();
+        sourcesDir = new File(workDir, "src");
+        write("a/A.java", "class A {}");
+        write("b/B.java", "class B {}");
+    }
+
+    /**
+     * Sources are read once, and again only when the file changes
+     *
+     * @throws IOException IOException
+     */
+    @Test
+    public void servesCachedSourcesUntilChanged() throws IOException {
+        final SourceCache cache = new SourceCache(Collections.singletonList(sourcesDir), "utf-8", 4, 1000);
+        assertThat(read(cache, "a", "A.java"), is("class A {}"));
+        assertThat(read(cache, "a", "A.java"), is("class A {}"));
+        assertThat(cache.getHitCount(), is(1L));
+
+        final File source = write("a/A.java", "class A { int changed; }");
+        assertThat(source.setLastModified(source.lastModified() + 2000), is(true));
+        assertThat(read(cache, "a", "A.java"), is("class A { int changed; }"));
+        assertThat(cache.getMissCount(), is(2L));
+        assertThat(cache.getSourceFile("c", "C.java"), is(nullValue()));
+    }
+
+    /**
+     * The least recently used sources are evicted to stay within capacity
+     *
+     * @throws IOException IOException
+     */
+    @Test
+    public void evictsLeastRecentlyUsed() throws IOException {
+        final SourceCache cache = new SourceCache(Collections.singletonList(sourcesDir), "utf-8", 4, 25);
+        read(cache, "a", "A.java");
+        read(cache, "b", "B.java");
+        read(cache, "a", "A.java");
+        write("c/C.java", "class C {}");
+        read(cache, "c", "C.java");
+
+        assertThat(cache.getLength(), is(20L));
+        read(cache, "a", "A.java");
+        assertThat(cache.getHitCount(), is(2L));
+        read(cache, "b", "B.java");
+        assertThat(cache.getHitCount(), is(2L));
+    }
+
+    /**
+     * Roots are searched in order, source jars included
+     *
+     * @throws IOException IOException
+     */
+    @Test
+    public void readsSourceJars() throws IOException {
+        final File sourcesJar = new File(workDir, "lib-sources.jar");
+        try (OutputStream outputStream = new FileOutputStream(sourcesJar);
+             ZipOutputStream zip = new ZipOutputStream(outputStream)) {
+            zip.putNextEntry(new ZipEntry("b/B.java"));
+            zip.write("class B { /* jar */ }".getBytes(StandardCharsets.UTF_8));
+            zip.putNextEntry(new ZipEntry("lib/Lib.java"));
+            zip.write("class Lib {}".getBytes(StandardCharsets.UTF_8));
+        }
+        final SourceCache cache = new SourceCache(Arrays.asList(sourcesDir, sourcesJar), "utf-8", 4, 1000);
+        assertThat(read(cache, "lib", "Lib.java"), is("class Lib {}"));
+        assertThat(read(cache, "lib", "Lib.java"), is("class Lib {}"));
+        assertThat(read(cache, "b", "B.java"), is("class B {}"));
+        assertThat(cache.getHitCount(), is(1L));
+    }
+
+    private File write(final String path, final String content) throws IOException {
+        final File file = new File(sourcesDir, path);
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static String read(final SourceCache cache, final String packageName, final String fileName)
+            throws IOException {
+        try (Reader reader = cache.getSourceFile(packageName, fileName)) {
+            return IOUtils.toString(reader);
+        }
+    }
+}